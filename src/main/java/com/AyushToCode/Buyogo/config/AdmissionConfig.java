@@ -0,0 +1,40 @@
+package com.AyushToCode.Buyogo.config;
+
+import com.AyushToCode.Buyogo.service.IngestAdmission;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Active when buyogo.admission.enabled=true. Gates POST /events/batch with
+ * IngestAdmissionInterceptor and caps the bytes read from its body with
+ * AdmissionBodyLimitFilter; the streaming endpoint already commits in
+ * bounded chunks and is left alone.
+ */
+@Configuration
+@ConditionalOnProperty(name = "buyogo.admission.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class AdmissionConfig implements WebMvcConfigurer {
+
+    private final IngestAdmission admission;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new IngestAdmissionInterceptor(admission))
+                .addPathPatterns("/events/batch")
+                .order(Ordered.HIGHEST_PRECEDENCE); // reject before JdbcAccessInterceptor makes anyone wait
+    }
+
+    @Bean
+    public FilterRegistrationBean<AdmissionBodyLimitFilter> admissionBodyLimitFilter() {
+        FilterRegistrationBean<AdmissionBodyLimitFilter> registration =
+                new FilterRegistrationBean<>(new AdmissionBodyLimitFilter(admission.getMaxBytes()));
+        registration.addUrlPatterns("/events/batch");
+        return registration;
+    }
+}
@@ -0,0 +1,60 @@
+package com.AyushToCode.Buyogo.config;
+
+import com.AyushToCode.Buyogo.repo.EventLog;
+import com.AyushToCode.Buyogo.service.EventService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * Active when buyogo.durable.enabled=true. Every written batch is appended to
+ * an EventLog, and at startup the in-memory tables and aggregates are rebuilt
+ * by replaying it, before the web server starts taking requests.
+ */
+@Configuration
+@ConditionalOnProperty(name = "buyogo.durable.enabled", havingValue = "true")
+public class DurableLogConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(DurableLogConfig.class);
+
+    @Value("${buyogo.durable.directory:./data/event-log}")
+    private String directory;
+
+    @Value("${buyogo.durable.segment-bytes:67108864}")
+    private long segmentBytes;
+
+    @Value("${buyogo.durable.compact-after-segments:4}")
+    private int compactAfterSegments;
+
+    // Compaction drops what RetentionService expires from the tables
+    @Value("${buyogo.retention.days:0}")
+    private int retentionDays;
+
+    @Bean(destroyMethod = "close")
+    public EventLog eventLog() throws IOException {
+        return new EventLog(Path.of(directory), segmentBytes, compactAfterSegments, retentionDays);
+    }
+
+    // Runs once all singletons exist, which is before the embedded server is started
+    @Bean
+    public SmartInitializingSingleton eventLogReplay(EventLog eventLog, EventService eventService) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                long events = eventLog.replay(eventService::applyReplayed);
+                log.info("Replayed {} events from {} in {} ms", events, directory,
+                        (System.nanoTime() - start) / 1_000_000);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Event log replay failed", e);
+            }
+        };
+    }
+}
@@ -0,0 +1,80 @@
+package com.AyushToCode.Buyogo.config;
+
+import com.AyushToCode.Buyogo.service.IngestAdmission;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.security.Principal;
+
+/**
+ * Front half of ingest admission: refuses a POST /events/batch before its
+ * body is read when it declares a length over max-bytes, its client is out of
+ * tokens, or the in-flight limit is reached. The event-count check and the
+ * bucket charge happen in MachineController once the batch is parsed.
+ */
+public class IngestAdmissionInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String PERMIT_ATTRIBUTE = IngestAdmissionInterceptor.class.getName() + ".permit";
+
+    private final IngestAdmission admission;
+
+    public IngestAdmissionInterceptor(IngestAdmission admission) {
+        this.admission = admission;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws InterruptedException {
+        if (!HttpMethod.POST.matches(request.getMethod())) {
+            return true;
+        }
+
+        IngestAdmission.Rejection rejection = admission.checkBytes(request.getContentLengthLong());
+        if (rejection == null) {
+            String client = clientKey(request);
+            rejection = admission.checkClient(client);
+            request.setAttribute(IngestAdmission.CLIENT_ATTRIBUTE, client);
+        }
+        if (rejection == null && !admission.tryAcquire()) {
+            rejection = new IngestAdmission.Rejection(HttpStatus.SERVICE_UNAVAILABLE, 1);
+        }
+        if (rejection != null) {
+            response.setStatus(rejection.status().value());
+            if (rejection.retryAfterSeconds() > 0) {
+                response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(rejection.retryAfterSeconds()));
+            }
+            return false;
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        release(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        release(request);
+    }
+
+    private String clientKey(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return admission.clientKey(principal != null ? principal.getName() : null,
+                request.getRemoteAddr(), request.getHeader(admission.getClientHeader()));
+    }
+
+    private void release(HttpServletRequest request) {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            admission.release();
+        }
+    }
+}
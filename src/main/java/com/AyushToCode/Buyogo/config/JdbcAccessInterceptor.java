@@ -0,0 +1,98 @@
+package com.AyushToCode.Buyogo.config;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounds how many /events requests run at once. With virtual threads every
+ * request gets its own thread, so without this bound a reconnect storm would
+ * turn into hundreds of threads all queueing inside the connection pool.
+ * Waiting on the semaphore parks a virtual thread cheaply.
+ *
+ * A permit covers the whole request, not just the controller call: for
+ * streamed responses (e.g. /events/export, which reads its cursor while
+ * writing) it is held until the async response completes.
+ */
+public class JdbcAccessInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String PERMIT_ATTRIBUTE = JdbcAccessInterceptor.class.getName() + ".permit";
+
+    private final Semaphore permits;
+    private final long acquireTimeoutMs;
+
+    public JdbcAccessInterceptor(int maxConcurrent, long acquireTimeoutMs) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws InterruptedException {
+        // The dispatch that finishes a streamed response is still covered by the original permit
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            return false;
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, Boolean.TRUE);
+        return true;
+    }
+
+    // The body is still being produced (export reads rows as it writes), so hand the permit to the async context
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) == null) {
+            return;
+        }
+        request.removeAttribute(PERMIT_ATTRIBUTE);
+        AtomicBoolean released = new AtomicBoolean();
+        request.getAsyncContext().addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                releaseOnce();
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                releaseOnce();
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+
+            private void releaseOnce() {
+                if (released.compareAndSet(false, true)) {
+                    permits.release();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.AyushToCode.Buyogo.config;
+
+import com.AyushToCode.Buyogo.repo.EventShards;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Active when buyogo.sharding.shards > 0. Events are then stored across that
+ * many independent DataSources instead of the primary machine_events table;
+ * see EventShards for routing and query fan-out.
+ */
+@Configuration
+@ConditionalOnExpression("${buyogo.sharding.shards:0} > 0")
+public class ShardingConfig {
+
+    @Value("${buyogo.sharding.shards}")
+    private int shards;
+
+    // %d is replaced by the shard index
+    @Value("${buyogo.sharding.url-template:jdbc:h2:mem:buyogo_shard_%d;DB_CLOSE_DELAY=-1}")
+    private String urlTemplate;
+
+    @Value("${buyogo.ingest.jdbc-writer.batch-size:1000}")
+    private int batchSize;
+
+    @Bean(destroyMethod = "close")
+    public EventShards eventShards() {
+        List<String> urls = new ArrayList<>(shards);
+        for (int s = 0; s < shards; s++) {
+            urls.add(urlTemplate.formatted(s));
+        }
+        return new EventShards(urls, batchSize);
+    }
+}
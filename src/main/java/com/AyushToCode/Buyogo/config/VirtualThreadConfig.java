@@ -0,0 +1,34 @@
+package com.AyushToCode.Buyogo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Active when spring.threads.virtual.enabled=true, which makes Tomcat run every
+ * request (and so MachineController and EventService) on a virtual thread.
+ * The /events endpoints are then gated by JdbcAccessInterceptor, which limits
+ * concurrent /events requests (streamed responses included until they finish)
+ * rather than individual JDBC calls; /metrics, /topology and /status are not
+ * counted.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig implements WebMvcConfigurer {
+
+    // 0 = number of CPU cores. H2 calls pin their carrier thread, so keep this <= cores.
+    @Value("${buyogo.jdbc.max-concurrent:0}")
+    private int maxConcurrent;
+
+    @Value("${buyogo.jdbc.acquire-timeout-ms:5000}")
+    private long acquireTimeoutMs;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        int permits = (maxConcurrent > 0) ? maxConcurrent : Runtime.getRuntime().availableProcessors();
+        registry.addInterceptor(new JdbcAccessInterceptor(permits, acquireTimeoutMs))
+                .addPathPatterns("/events/**");
+    }
+}
@@ -0,0 +1,58 @@
+package com.AyushToCode.Buyogo.controller;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.service.IngestMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Times how long Jackson takes to bind the JSON /events/batch body, which
+ * happens before the controller method is entered. Binary and NDJSON bodies
+ * are read by the controller itself and are not bound here.
+ */
+@ControllerAdvice(assignableTypes = MachineController.class)
+@RequiredArgsConstructor
+public class JsonBindTimingAdvice extends RequestBodyAdviceAdapter {
+
+    // Bind start in nanos, carried on the request instead of a ThreadLocal per (virtual) thread
+    private static final String BIND_START_ATTRIBUTE = JsonBindTimingAdvice.class.getName() + ".start";
+
+    private final IngestMetrics metrics;
+
+    // Only the List<MachineEvent> batch parameter
+    @Override
+    public boolean supports(MethodParameter methodParameter, Type targetType,
+                            Class<? extends HttpMessageConverter<?>> converterType) {
+        ResolvableType type = ResolvableType.forType(targetType);
+        return List.class.equals(type.resolve()) && MachineEvent.class.equals(type.getGeneric(0).resolve());
+    }
+
+    @Override
+    public HttpInputMessage beforeBodyRead(HttpInputMessage inputMessage, MethodParameter parameter,
+                                           Type targetType, Class<? extends HttpMessageConverter<?>> converterType) {
+        RequestContextHolder.currentRequestAttributes()
+                .setAttribute(BIND_START_ATTRIBUTE, System.nanoTime(), RequestAttributes.SCOPE_REQUEST);
+        return inputMessage;
+    }
+
+    @Override
+    public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter,
+                                Type targetType, Class<? extends HttpMessageConverter<?>> converterType) {
+        Object start = RequestContextHolder.currentRequestAttributes()
+                .getAttribute(BIND_START_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (start != null) {
+            metrics.record(IngestMetrics.Stage.JSON_BIND, System.nanoTime() - (long) start);
+        }
+        return body;
+    }
+}
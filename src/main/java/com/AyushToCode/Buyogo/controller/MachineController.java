@@ -1,17 +1,42 @@
 package com.AyushToCode.Buyogo.controller;
 
 import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.repo.SeriesRepository;
+import com.AyushToCode.Buyogo.service.EventExportService;
 import com.AyushToCode.Buyogo.service.EventService;
+import com.AyushToCode.Buyogo.service.EventStreamIngestor;
+import com.AyushToCode.Buyogo.service.IngestAdmission;
+import com.AyushToCode.Buyogo.service.IngestQueue;
 import com.AyushToCode.Buyogo.utility.BatchResponse;
+import com.AyushToCode.Buyogo.utility.BatchTooLargeException;
+import com.AyushToCode.Buyogo.utility.BinaryBatchCodec;
+import com.AyushToCode.Buyogo.utility.DefectRanking;
+import com.AyushToCode.Buyogo.utility.IngestTicket;
+import com.AyushToCode.Buyogo.utility.InvalidRequestException;
+import com.AyushToCode.Buyogo.utility.SeriesPoint;
 import com.AyushToCode.Buyogo.utility.StatsResponse;
 import com.AyushToCode.Buyogo.utility.TopDefectLineResponse;
+import com.AyushToCode.Buyogo.utility.TopDefectMachineResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.SequenceWriter;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.Instant;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/events")
@@ -20,12 +45,75 @@ public class MachineController {
 
     private final EventService eventService;
 
+    private final EventStreamIngestor streamIngestor;
+
+    private final IngestQueue ingestQueue;
+
+    private final ObjectMapper objectMapper;
+
+    private final EventExportService exportService;
+
+    private final IngestAdmission admission;
+
+    // client is set by IngestAdmissionInterceptor when admission control is enabled
     @PostMapping("/batch")
-    public ResponseEntity<BatchResponse> ingestBatch(@RequestBody List<MachineEvent> events) {
+    public ResponseEntity<?> ingestBatch(
+            @RequestBody List<MachineEvent> events,
+            @RequestAttribute(name = IngestAdmission.CLIENT_ATTRIBUTE, required = false) String client) {
+        return ingest(events, client);
+    }
+
+    // Same endpoint for the compact binary encoding used by bandwidth-limited gateways
+    @PostMapping(value = "/batch", consumes = BinaryBatchCodec.CONTENT_TYPE)
+    public ResponseEntity<?> ingestBinaryBatch(
+            InputStream body,
+            @RequestAttribute(name = IngestAdmission.CLIENT_ATTRIBUTE, required = false) String client)
+            throws IOException {
+        return ingest(BinaryBatchCodec.decode(body, admission.getMaxEvents()), client);
+    }
+
+    private ResponseEntity<?> ingest(List<MachineEvent> events, String client) {
+        if (admission.isEnabled()) {
+            IngestAdmission.Rejection rejection = admission.admit(client, events.size());
+            if (rejection != null) {
+                ResponseEntity.BodyBuilder reply = ResponseEntity.status(rejection.status());
+                if (rejection.retryAfterSeconds() > 0) {
+                    reply.header(HttpHeaders.RETRY_AFTER, Long.toString(rejection.retryAfterSeconds()));
+                }
+                return reply.build();
+            }
+        }
+
+        if (ingestQueue.isEnabled()) {
+            // Async mode: validate + enqueue only, the writer reports through the ticket
+            IngestTicket ticket = ingestQueue.submit(events);
+            if (ticket == null) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .build();
+            }
+            return ResponseEntity.accepted().body(ticket);
+        }
+
         BatchResponse response = eventService.processBatch(events);
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/batch/{ticketId}")
+    public ResponseEntity<IngestTicket> getBatchTicket(@PathVariable String ticketId) {
+        IngestTicket ticket = ingestQueue.getTicket(ticketId);
+        if (ticket == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(ticket);
+    }
+
+    // NDJSON body: one event per line, parsed incrementally and committed in chunks
+    @PostMapping(value = "/stream", consumes = "application/x-ndjson")
+    public ResponseEntity<BatchResponse> ingestStream(InputStream body) throws IOException {
+        return ResponseEntity.ok(streamIngestor.ingest(body));
+    }
+
     @GetMapping("/stats")
     public ResponseEntity<StatsResponse> getMachineStats(
             @RequestParam String machineId,
@@ -36,13 +124,172 @@ public class MachineController {
         return ResponseEntity.ok(eventService.getMachineStats(machineId, start, end));
     }
 
+    // Stats for many machines in one call: pass machineIds=... or lineId=..., not both
+    @GetMapping(value = "/stats/bulk", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getBulkMachineStats(
+            @RequestParam(required = false) List<String> machineIds,
+            @RequestParam(required = false) String lineId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant end) {
+
+        if ((machineIds == null) == (lineId == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Stream<StatsResponse> stats = eventService.getBulkMachineStats(machineIds, lineId, start, end);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(streamArray(stats));
+    }
+
+    // Bucketed defect trend for exactly one of machineId, lineId or factoryId; interval like 1m, 5m, 1h
+    @GetMapping(value = "/stats/series", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getDefectSeries(
+            @RequestParam(required = false) String machineId,
+            @RequestParam(required = false) String lineId,
+            @RequestParam(required = false) String factoryId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "1h") String interval) {
+
+        Map.Entry<SeriesRepository.Scope, String> target = resolveScope(machineId, lineId, factoryId);
+        if (target == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<SeriesPoint> points = eventService.getDefectSeries(target.getKey(), target.getValue(), from, to,
+                parseInterval(interval));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(streamArray(points));
+    }
+
+    // Raw events for one machine, line or factory in [from, to), as NDJSON (default) or CSV
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportEvents(
+            @RequestParam(required = false) String machineId,
+            @RequestParam(required = false) String lineId,
+            @RequestParam(required = false) String factoryId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "ndjson") String format) {
+
+        Map.Entry<SeriesRepository.Scope, String> target = resolveScope(machineId, lineId, factoryId);
+        if (target == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        EventExportService.Format exportFormat = EventExportService.Format.fromParam(format);
+        MediaType contentType = (exportFormat == EventExportService.Format.CSV)
+                ? MediaType.parseMediaType("text/csv")
+                : MediaType.parseMediaType("application/x-ndjson");
+
+        // Rows are read and written on the async thread, inside the export transaction
+        StreamingResponseBody body = out ->
+                exportService.export(target.getKey(), target.getValue(), from, to, exportFormat, out);
+        return ResponseEntity.ok().contentType(contentType).body(body);
+    }
+
     @GetMapping("/stats/top-defect-lines")
     public ResponseEntity<List<TopDefectLineResponse>> getTopDefectLines(
+            @RequestParam String factoryId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "totalDefects") String orderBy) {
+
+        DefectRanking ranking = DefectRanking.fromParam(orderBy);
+        return ResponseEntity.ok(eventService.getTopDefectLines(factoryId, from, to, limit, ranking));
+    }
+
+    @GetMapping("/stats/top-defect-machines")
+    public ResponseEntity<List<TopDefectMachineResponse>> getTopDefectMachines(
             @RequestParam String factoryId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
             @RequestParam(defaultValue = "10") int limit) {
 
-        return ResponseEntity.ok(eventService.getTopDefectLines(factoryId, from, to, limit));
+        // Hour-granular estimates from the ingest-time heavy-hitters sketches
+        return ResponseEntity.ok(eventService.getTopDefectMachines(factoryId, from, to, limit));
+    }
+
+    // Exactly one of the three IDs must be given
+    private static Map.Entry<SeriesRepository.Scope, String> resolveScope(String machineId, String lineId,
+                                                                          String factoryId) {
+        if (machineId != null && lineId == null && factoryId == null) {
+            return Map.entry(SeriesRepository.Scope.MACHINE, machineId);
+        }
+        if (machineId == null && lineId != null && factoryId == null) {
+            return Map.entry(SeriesRepository.Scope.LINE, lineId);
+        }
+        if (machineId == null && lineId == null && factoryId != null) {
+            return Map.entry(SeriesRepository.Scope.FACTORY, factoryId);
+        }
+        return null;
+    }
+
+    // Writes the array element by element instead of serializing it as one value
+    private StreamingResponseBody streamArray(List<?> items) {
+        return streamArray(items.stream());
+    }
+
+    // Each item is serialized as the stream yields it, so nothing is buffered ahead of the writer
+    private StreamingResponseBody streamArray(Stream<?> items) {
+        return out -> {
+            try (SequenceWriter writer = objectMapper.writer().writeValuesAsArray(out)) {
+                Iterator<?> it = items.iterator();
+                while (it.hasNext()) {
+                    writer.write(it.next());
+                }
+            }
+        };
+    }
+
+    // "5m" -> 300, "1h" -> 3600
+    private static long parseInterval(String interval) {
+        if (interval.length() < 2) {
+            throw new InvalidRequestException("Bad interval: " + interval);
+        }
+        long amount;
+        try {
+            amount = Long.parseLong(interval.substring(0, interval.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Bad interval: " + interval);
+        }
+        return switch (interval.charAt(interval.length() - 1)) {
+            case 'm' -> amount * 60;
+            case 'h' -> amount * 3600;
+            case 'd' -> amount * 86400;
+            default -> throw new InvalidRequestException("Bad interval: " + interval);
+        };
+    }
+
+    // A batch that waited too long for another batch sharing its event IDs; the client may retry
+    @ExceptionHandler(CannotAcquireLockException.class)
+    public ResponseEntity<Void> handleLockTimeout() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
+
+    // A binary batch declaring more than max-events or a body over max-bytes; same status as an oversized JSON batch
+    @ExceptionHandler(BatchTooLargeException.class)
+    public ResponseEntity<String> handleBatchTooLarge(BatchTooLargeException e) {
+        return ResponseEntity.status(HttpStatus.CONTENT_TOO_LARGE).body(e.getMessage());
+    }
+
+    /**
+     * A JSON body cut off by AdmissionBodyLimitFilter surfaces wrapped by the
+     * JSON reader; it gets the same 413. Any other unreadable body is rethrown
+     * to the default handling (400).
+     */
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<String> handleUnreadable(HttpMessageNotReadableException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BatchTooLargeException tooLarge) {
+                return handleBatchTooLarge(tooLarge);
+            }
+        }
+        throw e;
+    }
+
+    // Bad query parameters (e.g. an unknown orderBy) are a client error; other exceptions stay 500
+    @ExceptionHandler(InvalidRequestException.class)
+    public ResponseEntity<String> handleInvalidRequest(InvalidRequestException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
     }
 }
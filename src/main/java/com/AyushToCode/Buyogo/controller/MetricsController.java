@@ -0,0 +1,20 @@
+package com.AyushToCode.Buyogo.controller;
+
+import com.AyushToCode.Buyogo.service.IngestMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+public class MetricsController {
+
+    private final IngestMetrics metrics;
+
+    // Prometheus scrape target
+    @GetMapping(value = "/metrics", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public ResponseEntity<String> scrape() {
+        return ResponseEntity.ok(metrics.scrape());
+    }
+}
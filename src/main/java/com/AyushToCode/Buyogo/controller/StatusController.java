@@ -0,0 +1,59 @@
+package com.AyushToCode.Buyogo.controller;
+
+import com.AyushToCode.Buyogo.service.MachineStatusMonitor;
+import com.AyushToCode.Buyogo.utility.MachineStatusEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+@RestController
+@RequestMapping("/status")
+@RequiredArgsConstructor
+public class StatusController {
+
+    private final MachineStatusMonitor statusMonitor;
+
+    // Clients (EventSource) reconnect on their own when the stream ends
+    @Value("${buyogo.status.emitter-timeout-ms:1800000}")
+    private long emitterTimeoutMs;
+
+    /**
+     * Server-sent events: one "status" event per machine with its current
+     * status on connect, then one whenever a machine changes between Healthy
+     * and Warning. Optionally limited to one machineId. A client that cannot
+     * keep up is disconnected and reconnects to a fresh snapshot.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam(required = false) String machineId) {
+        if (!statusMonitor.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Status push is disabled (buyogo.status.enabled)");
+        }
+
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Runnable unsubscribe = statusMonitor.subscribe(machineId,
+                event -> send(emitter, event),
+                () -> emitter.completeWithError(new IOException("Status stream fell behind or went away")));
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+        return emitter;
+    }
+
+    private static void send(SseEmitter emitter, MachineStatusEvent event) {
+        try {
+            emitter.send(SseEmitter.event().name("status").data(event));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // client went away; the monitor drops it
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.AyushToCode.Buyogo.controller;
+
+import com.AyushToCode.Buyogo.service.TopologyRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/topology")
+@RequiredArgsConstructor
+public class TopologyController {
+
+    private final TopologyRegistry topologyRegistry;
+
+    // Re-reads the topology file and swaps it in without pausing ingestion
+    @PostMapping("/reload")
+    public ResponseEntity<Map<String, Integer>> reload() {
+        topologyRegistry.reload();
+        return ResponseEntity.ok(Map.of("machines", topologyRegistry.size()));
+    }
+}
@@ -2,6 +2,7 @@ package com.AyushToCode.Buyogo.entity;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -11,6 +12,7 @@ import java.time.Instant;
 
 @Data
 @Entity
+@Table(name = "machine_events")
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
@@ -33,4 +35,7 @@ public class MachineEvent {
 
     private int defectCount;
 
+    // Fingerprint of the payload, computed on ingest (see PayloadHasher)
+    private long payloadHash;
+
 }
\ No newline at end of file
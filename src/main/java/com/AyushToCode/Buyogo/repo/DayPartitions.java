@@ -0,0 +1,288 @@
+package com.AyushToCode.Buyogo.repo;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Day-partitioned storage behind the machine_events and machine_minute_rollups
+ * names. Each UTC day's rows live in machine_events_YYYYMMDD and
+ * machine_minute_rollups_YYYYMMDD, each with the composite (key, time)
+ * indexes. The two plain names are views that UNION ALL the day tables (and
+ * the empty templates from schema.sql), so every read keeps its SQL and H2
+ * pushes the key and time conditions down into each day table's indexes.
+ * Writes go straight to the table of the row's day, a range export reads only
+ * the days overlapping its window, and a day expires with DROP TABLE.
+ *
+ * Lookups by eventId alone (dedupe) probe every day table's primary key, so
+ * their cost grows with the number of days kept.
+ *
+ * DDL in H2 commits the session's open transaction, so missing day tables are
+ * created on a separate auto-commit connection. Tomorrow's tables are always
+ * created ahead, so ingest normally finds its tables in place.
+ */
+@Repository
+public class DayPartitions {
+
+    static final String EVENT_COLUMNS =
+            "event_id, machine_id, line_id, factory_id, event_time, received_time, duration_ms, defect_count";
+
+    static final RowMapper<MachineEvent> EVENT_ROW = (rs, i) -> {
+        MachineEvent event = new MachineEvent();
+        event.setEventId(rs.getString(1));
+        event.setMachineId(rs.getString(2));
+        event.setLineId(rs.getString(3));
+        event.setFactoryId(rs.getString(4));
+        event.setEventTime(rs.getTimestamp(5).toInstant());
+        event.setReceivedTime(rs.getTimestamp(6).toInstant());
+        event.setDurationMs(rs.getInt(7));
+        event.setDefectCount(rs.getInt(8));
+        return event;
+    };
+
+    private static final String EVENTS = "machine_events";
+    private static final String ROLLUPS = "machine_minute_rollups";
+
+    // %1$s is the yyyyMMdd day suffix; IF NOT EXISTS so contexts sharing one database agree.
+    // The (key, time) indexes seek to one key's range within the day; event_time alone serves warm-up.
+    private static final List<String> DAY_DDL = List.of(
+            "CREATE TABLE IF NOT EXISTS machine_events_%1$s (" +
+            "event_id VARCHAR(50) PRIMARY KEY, machine_id VARCHAR(50) NOT NULL, line_id VARCHAR(50), " +
+            "factory_id VARCHAR(50), event_time TIMESTAMP NOT NULL, received_time TIMESTAMP NOT NULL, " +
+            "duration_ms INT NOT NULL, defect_count INT NOT NULL, payload_hash BIGINT NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS idx_events_machine_time_%1$s ON machine_events_%1$s (machine_id, event_time)",
+            "CREATE INDEX IF NOT EXISTS idx_events_line_time_%1$s ON machine_events_%1$s (line_id, event_time)",
+            "CREATE INDEX IF NOT EXISTS idx_events_factory_time_%1$s ON machine_events_%1$s (factory_id, event_time)",
+            "CREATE INDEX IF NOT EXISTS idx_events_time_%1$s ON machine_events_%1$s (event_time)",
+            "CREATE TABLE IF NOT EXISTS machine_minute_rollups_%1$s (" +
+            "machine_id VARCHAR(50) NOT NULL, bucket_start TIMESTAMP NOT NULL, line_id VARCHAR(50), " +
+            "factory_id VARCHAR(50), event_count BIGINT NOT NULL, defect_sum BIGINT NOT NULL, " +
+            "PRIMARY KEY (machine_id, bucket_start))",
+            "CREATE INDEX IF NOT EXISTS idx_rollups_line_bucket_%1$s ON machine_minute_rollups_%1$s (line_id, bucket_start)",
+            "CREATE INDEX IF NOT EXISTS idx_rollups_factory_bucket_%1$s " +
+            "ON machine_minute_rollups_%1$s (factory_id, bucket_start)");
+
+    private final JdbcTemplate jdbc;
+    private final DataSource dataSource;
+    // Days whose tables exist, oldest first
+    private final NavigableSet<LocalDate> days = new ConcurrentSkipListSet<>();
+
+    public DayPartitions(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+        this.dataSource = jdbc.getDataSource();
+        days.addAll(storedDays());
+        // Also rebuilds the views, which another context on the same database may have left behind
+        create(List.of(LocalDate.now(ZoneOffset.UTC)), true);
+    }
+
+    public static LocalDate dayOf(Instant instant) {
+        return LocalDate.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    public static String eventTable(LocalDate day) {
+        return EVENTS + "_" + DateTimeFormatter.BASIC_ISO_DATE.format(day);
+    }
+
+    public static String rollupTable(LocalDate day) {
+        return ROLLUPS + "_" + DateTimeFormatter.BASIC_ISO_DATE.format(day);
+    }
+
+    // Days that have tables, oldest first
+    public List<LocalDate> days() {
+        return List.copyOf(days);
+    }
+
+    // Days with tables that overlap [from, to), oldest first
+    public List<LocalDate> days(Instant from, Instant to) {
+        if (!from.isBefore(to)) {
+            return List.of();
+        }
+        return List.copyOf(days.subSet(dayOf(from), true, dayOf(to.minusNanos(1)), true));
+    }
+
+    /**
+     * Makes sure every given day has its tables, plus tomorrow, so the first
+     * batch of a day does not have to wait for DDL. Callers may be inside a
+     * transaction: the tables are created on another connection.
+     */
+    public void ensure(Collection<LocalDate> needed) {
+        if (days.contains(LocalDate.now(ZoneOffset.UTC).plusDays(1)) && days.containsAll(needed)) {
+            return;
+        }
+        create(needed, false);
+    }
+
+    /**
+     * Drops the tables of every day before firstKeptDay and returns those days,
+     * oldest first. The views stop reading a day before its tables are dropped,
+     * as H2 will not drop a table that a view still depends on.
+     */
+    public synchronized List<LocalDate> dropBefore(LocalDate firstKeptDay) {
+        List<LocalDate> expired = List.copyOf(days.headSet(firstKeptDay));
+        drop(expired);
+        return expired;
+    }
+
+    // Drops every day's tables, including any another context created; the next write creates what it needs again
+    public synchronized void dropAll() {
+        days.addAll(storedDays());
+        drop(List.copyOf(days));
+    }
+
+    /**
+     * Events of one machine, line or factory in [from, to), in event-time order.
+     * Only the days overlapping the window are read, one after another: days
+     * do not overlap, so each day's ordered rows in turn keep the whole stream
+     * ordered, and only one cursor is open at a time. The stream must be closed.
+     */
+    public Stream<MachineEvent> streamEvents(SeriesRepository.Scope scope, String id, Instant from, Instant to) {
+        DayCursor cursor = new DayCursor(days(from, to).iterator(),
+                "SELECT " + EVENT_COLUMNS + " FROM %s " +
+                "WHERE " + scope.column() + " = ? AND event_time >= ? AND event_time < ? ORDER BY event_time",
+                id, Timestamp.from(from), Timestamp.from(to));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+                .onClose(cursor::close);
+    }
+
+    // Days whose event table exists in the database
+    private List<LocalDate> storedDays() {
+        List<LocalDate> stored = new ArrayList<>();
+        jdbc.query("SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES " +
+                        "WHERE TABLE_SCHEMA = CURRENT_SCHEMA AND TABLE_NAME LIKE 'MACHINE_EVENTS_%'",
+                rs -> {
+                    String suffix = rs.getString(1).substring(EVENTS.length() + 1);
+                    if (suffix.matches("\\d{8}")) {
+                        stored.add(LocalDate.parse(suffix, DateTimeFormatter.BASIC_ISO_DATE));
+                    }
+                });
+        return stored;
+    }
+
+    private synchronized void create(Collection<LocalDate> needed, boolean rebuildViews) {
+        NavigableSet<LocalDate> missing = new TreeSet<>(needed);
+        missing.add(LocalDate.now(ZoneOffset.UTC).plusDays(1));
+        missing.removeAll(days);
+        if (missing.isEmpty() && !rebuildViews) {
+            return;
+        }
+
+        List<String> ddl = new ArrayList<>();
+        for (LocalDate day : missing) {
+            String suffix = DateTimeFormatter.BASIC_ISO_DATE.format(day);
+            DAY_DDL.forEach(statement -> ddl.add(statement.formatted(suffix)));
+        }
+        NavigableSet<LocalDate> all = new TreeSet<>(days);
+        all.addAll(missing);
+        ddl.addAll(viewDdl(all));
+        runDdl(ddl);
+        days.addAll(missing);
+    }
+
+    // Caller holds the monitor
+    private void drop(List<LocalDate> expired) {
+        if (expired.isEmpty()) {
+            return;
+        }
+        NavigableSet<LocalDate> kept = new TreeSet<>(days);
+        expired.forEach(kept::remove);
+
+        List<String> ddl = new ArrayList<>(viewDdl(kept));
+        for (LocalDate day : expired) {
+            ddl.add("DROP TABLE IF EXISTS " + eventTable(day));
+            ddl.add("DROP TABLE IF EXISTS " + rollupTable(day));
+        }
+        expired.forEach(days::remove);
+        runDdl(ddl);
+    }
+
+    private static List<String> viewDdl(Collection<LocalDate> all) {
+        StringBuilder events = new StringBuilder("CREATE OR REPLACE VIEW " + EVENTS +
+                " AS SELECT * FROM " + EVENTS + "_template");
+        StringBuilder rollups = new StringBuilder("CREATE OR REPLACE VIEW " + ROLLUPS +
+                " AS SELECT * FROM " + ROLLUPS + "_template");
+        for (LocalDate day : all) {
+            events.append(" UNION ALL SELECT * FROM ").append(eventTable(day));
+            rollups.append(" UNION ALL SELECT * FROM ").append(rollupTable(day));
+        }
+        return List.of(events.toString(), rollups.toString());
+    }
+
+    // On its own auto-commit connection: on the caller's it would commit the open transaction
+    private void runDdl(List<String> statements) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(true);
+            JdbcTemplate ddl = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+            statements.forEach(ddl::execute);
+        } catch (SQLException e) {
+            throw new CannotGetJdbcConnectionException("No connection for day partition DDL", e);
+        }
+    }
+
+    // Reads the days in order, opening each day's cursor once the previous one is exhausted
+    private final class DayCursor implements Iterator<MachineEvent> {
+        private final Iterator<LocalDate> remaining;
+        private final String sql;
+        private final Object[] args;
+        private Stream<MachineEvent> current;
+        private Iterator<MachineEvent> rows = Collections.emptyIterator();
+
+        DayCursor(Iterator<LocalDate> remaining, String sql, Object... args) {
+            this.remaining = remaining;
+            this.sql = sql;
+            this.args = args;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!rows.hasNext()) {
+                close();
+                if (!remaining.hasNext()) {
+                    return false;
+                }
+                current = jdbc.queryForStream(sql.formatted(eventTable(remaining.next())), EVENT_ROW, args);
+                rows = current.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public MachineEvent next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return rows.next();
+        }
+
+        void close() {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+}
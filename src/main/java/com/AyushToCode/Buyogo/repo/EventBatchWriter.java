@@ -0,0 +1,89 @@
+package com.AyushToCode.Buyogo.repo;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.utility.StoredEventKey;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes events straight through JDBC, bypassing the JPA persistence context.
+ * saveAll() has to merge() every entity with an assigned @Id, which costs one
+ * hidden SELECT per row (and cannot write through the machine_events view);
+ * this writer issues H2 MERGE ... KEY(event_id) upserts as JDBC batches into
+ * the day table of each event (see DayPartitions), so the cost is one
+ * round-trip per batchSize rows and day. A correction that moves an event to
+ * another day removes it from the old day's table in the same transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class EventBatchWriter {
+
+    private static final String UPSERT_SQL =
+            "MERGE INTO %s " +
+            "(event_id, machine_id, line_id, factory_id, event_time, received_time, duration_ms, defect_count, payload_hash) " +
+            "KEY (event_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_SQL = "DELETE FROM %s WHERE event_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final DayPartitions partitions;
+
+    @Value("${buyogo.ingest.jdbc-writer.batch-size:1000}")
+    private int batchSize;
+
+    // `previous` holds the stored versions of the updated events
+    public void upsertAll(List<MachineEvent> events, List<StoredEventKey> previous) {
+        upsertAll(jdbcTemplate, partitions, events, previous, batchSize);
+    }
+
+    // Same upsert against any day-partitioned store (used by EventShards)
+    public static void upsertAll(JdbcTemplate jdbcTemplate, DayPartitions partitions, List<MachineEvent> events,
+                                 List<StoredEventKey> previous, int batchSize) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        Map<LocalDate, List<MachineEvent>> byDay = new TreeMap<>();
+        Map<String, LocalDate> dayById = HashMap.newHashMap(events.size());
+        for (MachineEvent event : events) {
+            LocalDate day = DayPartitions.dayOf(event.getEventTime());
+            byDay.computeIfAbsent(day, d -> new ArrayList<>()).add(event);
+            dayById.put(event.getEventId(), day);
+        }
+        partitions.ensure(byDay.keySet());
+
+        Map<LocalDate, List<String>> moved = new TreeMap<>();
+        for (StoredEventKey old : previous) {
+            LocalDate oldDay = DayPartitions.dayOf(old.eventTime());
+            if (!oldDay.equals(dayById.get(old.eventId()))) {
+                moved.computeIfAbsent(oldDay, d -> new ArrayList<>()).add(old.eventId());
+            }
+        }
+        moved.forEach((day, ids) -> jdbcTemplate.batchUpdate(DELETE_SQL.formatted(DayPartitions.eventTable(day)),
+                ids, batchSize, (ps, id) -> ps.setString(1, id)));
+
+        byDay.forEach((day, dayEvents) -> jdbcTemplate.batchUpdate(UPSERT_SQL.formatted(DayPartitions.eventTable(day)),
+                dayEvents, batchSize, (ps, event) -> {
+                    ps.setString(1, event.getEventId());
+                    ps.setString(2, event.getMachineId());
+                    ps.setString(3, event.getLineId());
+                    ps.setString(4, event.getFactoryId());
+                    ps.setTimestamp(5, Timestamp.from(event.getEventTime()));
+                    ps.setTimestamp(6, Timestamp.from(event.getReceivedTime()));
+                    ps.setInt(7, event.getDurationMs());
+                    ps.setInt(8, event.getDefectCount());
+                    ps.setLong(9, event.getPayloadHash());
+                }));
+    }
+}
@@ -0,0 +1,642 @@
+package com.AyushToCode.Buyogo.repo;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, segmented log of written batches; the durable copy of
+ * machine_events when the database itself is in memory.
+ *
+ * <pre>
+ * segment file  events-{seq, 20 digits}.log
+ * record        int length | int CRC32C of payload | payload
+ * payload       long recordId, int count, then per event: eventId, machineId,
+ *               lineId, factoryId (short len + UTF-8, -1 = null), eventTime and
+ *               receivedTime (long seconds + int nanos), int durationMs,
+ *               int defectCount, long payloadHash
+ * abort marker  long recordId of an earlier record, int -1
+ * </pre>
+ *
+ * Appends are queued to a single writer thread that writes everything queued
+ * so far and then fsyncs once (group commit); callers wait for that fsync.
+ * A record is written before its database transaction commits and stays in
+ * doubt until the caller reports commit(recordId) or abort(recordId); an
+ * abort appends a marker (retried after a write error), and replay and compaction
+ * skip marked records.
+ *
+ * A new segment is started at every open and after any write error, so a
+ * torn record can only sit at the tail of a sealed segment and replay of that
+ * segment stops there. Compaction rewrites sealed segments with only the latest
+ * version of each eventId, drops events whose day is past the retention
+ * period, and packs the result into segments of at most segmentBytes.
+ */
+public class EventLog implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(EventLog.class);
+
+    private static final String PREFIX = "events-";
+    private static final String SUFFIX = ".log";
+    private static final String COMPACT_SUFFIX = ".compacting";
+
+    private static final int HEADER_BYTES = 8;
+
+    // Events per record when compaction rewrites a segment
+    private static final int COMPACT_RECORD_EVENTS = 1000;
+
+    // Segments are mapped whole on replay, so they must stay well below the 2 GB mapping limit
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    // Pause after a failed write before retrying what it left queued
+    private static final long WRITE_RETRY_DELAY_MS = 100;
+
+    // Marks an abort marker in the count field
+    private static final int ABORT_MARKER = -1;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int compactAfterSegments;
+    // 0 keeps events forever; otherwise compaction drops whole UTC days older than this
+    private final int retentionDays;
+
+    private final BlockingQueue<PendingAppend> queue = new LinkedBlockingQueue<>();
+    // Record id -> segment holding it, for records whose transaction has not finished
+    private final Map<Long, Long> inDoubt = new ConcurrentHashMap<>();
+    // Records voided by markers written since open; older markers are read from the segments
+    private final Set<Long> abortedSinceOpen = ConcurrentHashMap.newKeySet();
+    private final AtomicLong nextRecordId;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final Thread writer;
+    private Thread compactor;
+    private volatile boolean running;
+
+    // Written by the writer thread only; activeSeq is also read by compaction.
+    // active is null after a write error until the next segment could be opened.
+    private FileChannel active;
+    private volatile long activeSeq;
+    private long activeBytes;
+    // Newest segment written by the last compaction; later sealed segments count towards the next one
+    private volatile long compactedThrough;
+
+    // recordId is the id written (data record) or voided (marker)
+    private record PendingAppend(byte[] record, long recordId, boolean marker, CompletableFuture<Long> done) {
+    }
+
+    // One decoded record; events is null for an abort marker
+    private interface RecordVisitor {
+        void visit(long recordId, List<MachineEvent> events);
+    }
+
+    public EventLog(Path directory, long segmentBytes, int compactAfterSegments, int retentionDays)
+            throws IOException {
+        if (segmentBytes > MAX_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Segment size " + segmentBytes + " exceeds " + MAX_SEGMENT_BYTES);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.compactAfterSegments = compactAfterSegments;
+        this.retentionDays = retentionDays;
+
+        Files.createDirectories(directory);
+        try (Stream<Path> leftovers = Files.list(directory)) {
+            for (Path p : leftovers.filter(p -> p.toString().endsWith(COMPACT_SUFFIX)).toList()) {
+                Files.delete(p); // an interrupted compaction; its inputs are still in place
+            }
+        }
+        List<Long> existing = segmentSeqs();
+        openSegment(existing.isEmpty() ? 1 : existing.getLast() + 1);
+        // Segment numbers only grow, so ids starting at activeSeq << 32 never repeat an older one
+        nextRecordId = new AtomicLong(activeSeq << 32);
+
+        running = true;
+        writer = new Thread(this::writeLoop, "event-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues one record holding `events`; the future completes with its record
+     * id once it has been fsynced. Records are written in the order this method
+     * is called. The caller must then report commit(id) or abort(id).
+     */
+    public CompletableFuture<Long> append(List<MachineEvent> events) {
+        if (events.isEmpty()) {
+            return CompletableFuture.completedFuture(0L);
+        }
+        long recordId = nextRecordId.incrementAndGet();
+        return enqueue(new PendingAppend(encode(recordId, events), recordId, false, new CompletableFuture<>()));
+    }
+
+    // The transaction that wrote recordId committed; its record is final
+    public void commit(long recordId) {
+        inDoubt.remove(recordId);
+    }
+
+    /**
+     * The transaction that wrote recordId rolled back: appends a marker so
+     * replay skips the record. Completes once the marker is fsynced.
+     */
+    public CompletableFuture<Long> abort(long recordId) {
+        if (recordId == 0) {
+            return CompletableFuture.completedFuture(0L);
+        }
+        return enqueue(new PendingAppend(encodeMarker(recordId), recordId, true, new CompletableFuture<>()));
+    }
+
+    /**
+     * Feeds every record of the sealed segments to `sink`, oldest first, and
+     * returns the number of events read. Records voided by an abort marker are
+     * skipped. With a retention period, every version of an eventId whose
+     * latest version is older than the first kept day is skipped too, so
+     * expired days are not brought back; that takes a first pass over the log
+     * to find them. Only call before appending.
+     */
+    public long replay(Consumer<List<MachineEvent>> sink) throws IOException {
+        List<Long> sealed = segmentSeqs().stream().filter(seq -> seq < activeSeq).toList();
+        Set<Long> aborted = abortedIn(sealed);
+
+        Set<String> expired = new HashSet<>();
+        Instant firstKept = firstKeptTime();
+        if (firstKept != null) {
+            for (long seq : sealed) {
+                readSegment(segmentPath(seq), false, (recordId, batch) -> {
+                    if (batch != null && !aborted.contains(recordId)) {
+                        for (MachineEvent e : batch) {
+                            if (e.getEventTime().isBefore(firstKept)) {
+                                expired.add(e.getEventId());
+                            } else {
+                                expired.remove(e.getEventId());
+                            }
+                        }
+                    }
+                });
+            }
+        }
+
+        long[] events = {0};
+        for (long seq : sealed) {
+            readSegment(segmentPath(seq), false, (recordId, batch) -> {
+                if (batch == null || aborted.contains(recordId)) {
+                    return;
+                }
+                if (!expired.isEmpty()) {
+                    batch = batch.stream().filter(e -> !expired.contains(e.getEventId())).toList();
+                }
+                if (!batch.isEmpty()) {
+                    events[0] += batch.size();
+                    sink.accept(batch);
+                }
+            });
+        }
+        return events[0];
+    }
+
+    /**
+     * Rewrites the sealed segments so they hold only the latest version of each
+     * eventId still inside the retention period. Segments that still hold an
+     * in-doubt record, and everything after them, are left alone.
+     *
+     * Consecutive segments are packed into outputs of at most segmentBytes
+     * (a segment whose own live events are larger stays on its own). Each
+     * output replaces the newest segment of its group before the rest of the
+     * group is deleted. The live versions of different segments never overlap,
+     * so a crash at any point leaves a log that replays the same.
+     */
+    public synchronized void compact() throws IOException {
+        long limit = inDoubt.values().stream().reduce(activeSeq, Math::min);
+        List<Long> sealed = segmentSeqs().stream().filter(seq -> seq < limit).toList();
+        if (sealed.size() < 2) {
+            return;
+        }
+        Set<Long> aborted = abortedIn(sealed);
+
+        // Latest version of every eventId and the segment it was read from
+        Map<String, MachineEvent> latest = new HashMap<>();
+        Map<String, Long> latestSeq = new HashMap<>();
+        for (long seq : sealed) {
+            readSegment(segmentPath(seq), false, (recordId, batch) -> {
+                if (batch != null && !aborted.contains(recordId)) {
+                    for (MachineEvent e : batch) {
+                        latest.put(e.getEventId(), e);
+                        latestSeq.put(e.getEventId(), seq);
+                    }
+                }
+            });
+        }
+
+        Instant firstKept = firstKeptTime();
+        if (firstKept != null) {
+            latest.values().removeIf(e -> e.getEventTime().isBefore(firstKept));
+        }
+
+        Map<Long, List<MachineEvent>> liveBySeq = new HashMap<>();
+        for (MachineEvent event : latest.values()) {
+            liveBySeq.computeIfAbsent(latestSeq.get(event.getEventId()), k -> new ArrayList<>()).add(event);
+        }
+
+        List<Long> group = new ArrayList<>();
+        List<byte[]> groupRecords = new ArrayList<>();
+        long groupBytes = 0;
+        for (long seq : sealed) {
+            List<byte[]> records = encodeChunks(liveBySeq.getOrDefault(seq, List.of()));
+            long bytes = records.stream().mapToLong(r -> r.length).sum();
+            if (!group.isEmpty() && groupBytes + bytes > segmentBytes) {
+                replaceGroup(group, groupRecords);
+                group.clear();
+                groupRecords.clear();
+                groupBytes = 0;
+            }
+            group.add(seq);
+            groupRecords.addAll(records);
+            groupBytes += bytes;
+        }
+        replaceGroup(group, groupRecords);
+
+        compactedThrough = sealed.getLast();
+        log.info("Compacted {} event log segments ({} live events)", sealed.size(), latest.size());
+    }
+
+    // Writes records over the newest segment of group, then deletes the others
+    private void replaceGroup(List<Long> group, List<byte[]> records) throws IOException {
+        long target = group.getLast();
+        if (records.isEmpty()) {
+            Files.deleteIfExists(segmentPath(target));
+        } else {
+            Path temp = directory.resolve(PREFIX + String.format("%020d", target) + COMPACT_SUFFIX);
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                for (byte[] record : records) {
+                    writeFully(out, record);
+                }
+                out.force(true);
+            }
+            Files.move(temp, segmentPath(target), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        for (long seq : group) {
+            if (seq != target) {
+                Files.deleteIfExists(segmentPath(seq));
+            }
+        }
+    }
+
+    // Compacted records are final, so they carry record id 0 and can never be aborted
+    private static List<byte[]> encodeChunks(List<MachineEvent> events) {
+        List<byte[]> records = new ArrayList<>();
+        for (int from = 0; from < events.size(); from += COMPACT_RECORD_EVENTS) {
+            records.add(encode(0, events.subList(from, Math.min(events.size(), from + COMPACT_RECORD_EVENTS))));
+        }
+        return records;
+    }
+
+    // Start of the first UTC day inside the retention period, or null when events are kept forever
+    private Instant firstKeptTime() {
+        return (retentionDays > 0)
+                ? LocalDate.now(ZoneOffset.UTC).minusDays(retentionDays - 1L).atStartOfDay(ZoneOffset.UTC).toInstant()
+                : null;
+    }
+
+    // Records voided by a marker in the given segments or written since open
+    private Set<Long> abortedIn(List<Long> seqs) throws IOException {
+        Set<Long> aborted = new HashSet<>(abortedSinceOpen);
+        for (long seq : seqs) {
+            readSegment(segmentPath(seq), true, (recordId, batch) -> aborted.add(recordId));
+        }
+        return aborted;
+    }
+
+    public int segmentCount() throws IOException {
+        return segmentSeqs().size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // No interrupt: it would close the channel under an in-flight write
+        running = false;
+        try {
+            writer.join(5000);
+            if (compactor != null) {
+                compactor.join(5000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (active != null) {
+            active.close();
+        }
+    }
+
+    private CompletableFuture<Long> enqueue(PendingAppend pending) {
+        if (!running) {
+            pending.done().completeExceptionally(new IllegalStateException("Event log is closed"));
+        } else {
+            queue.add(pending);
+        }
+        return pending.done();
+    }
+
+    private void writeLoop() {
+        List<PendingAppend> group = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingAppend first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                queue.drainTo(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            try {
+                if (active == null) {
+                    openSegment(activeSeq + 1);
+                }
+                for (PendingAppend pending : group) {
+                    if (activeBytes > 0 && activeBytes + pending.record().length > segmentBytes) {
+                        rollSegment();
+                    }
+                    if (!pending.marker()) {
+                        inDoubt.put(pending.recordId(), activeSeq);
+                    }
+                    writeFully(active, pending.record());
+                    activeBytes += pending.record().length;
+                }
+                // One fsync for the whole group
+                active.force(false);
+                for (PendingAppend pending : group) {
+                    if (pending.marker()) {
+                        abortedSinceOpen.add(pending.recordId());
+                        inDoubt.remove(pending.recordId());
+                    }
+                    pending.done().complete(pending.recordId());
+                }
+            } catch (IOException e) {
+                log.error("Event log write failed", e);
+                abandonSegment();
+                for (PendingAppend pending : group) {
+                    if (pending.marker()) {
+                        // Voided for this process right away; the record stays in doubt, so compaction
+                        // leaves its segment alone, until the retried marker reaches the disk
+                        abortedSinceOpen.add(pending.recordId());
+                        if (running) {
+                            queue.add(new PendingAppend(pending.record(), pending.recordId(), true,
+                                    new CompletableFuture<>()));
+                        } else {
+                            log.warn("Abort marker for record {} not written; replay after restart may keep it",
+                                    pending.recordId());
+                        }
+                    } else {
+                        // The record may have reached the disk intact, but its caller sees a failure and rolls back
+                        queue.add(new PendingAppend(encodeMarker(pending.recordId()), pending.recordId(), true,
+                                new CompletableFuture<>()));
+                    }
+                    pending.done().completeExceptionally(e);
+                }
+                pauseAfterWriteError();
+            }
+            group.clear();
+        }
+    }
+
+    // Retried markers are queued again at once, so wait a little before the next attempt
+    private void pauseAfterWriteError() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(WRITE_RETRY_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        active.force(true);
+        active.close();
+        openSegment(activeSeq + 1);
+
+        long sealedSinceCompaction = segmentSeqs().stream()
+                .filter(seq -> seq > compactedThrough && seq < activeSeq).count();
+        if (sealedSinceCompaction >= compactAfterSegments && compacting.compareAndSet(false, true)) {
+            compactor = new Thread(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    log.error("Event log compaction failed", e);
+                } finally {
+                    compacting.set(false);
+                }
+            }, "event-log-compactor");
+            compactor.setDaemon(true);
+            compactor.start();
+        }
+    }
+
+    /**
+     * After a failed write the segment may end in a torn record, and replay of
+     * a segment stops at the first one. Later records go to a new segment.
+     */
+    private void abandonSegment() {
+        try {
+            if (active != null) {
+                active.close();
+            }
+        } catch (IOException e) {
+            log.warn("Closing event log segment {} after a write error failed", activeSeq, e);
+        }
+        active = null;
+        try {
+            openSegment(activeSeq + 1);
+        } catch (IOException e) {
+            log.error("Opening event log segment {} failed; retrying on the next append", activeSeq + 1, e);
+        }
+    }
+
+    // A failed attempt still moves activeSeq on, so a half-created file is never reused
+    private void openSegment(long seq) throws IOException {
+        activeSeq = seq;
+        activeBytes = 0;
+        active = FileChannel.open(segmentPath(seq), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    // Visits every intact record; with markersOnly, only abort markers and without decoding events
+    private void readSegment(Path path, boolean markersOnly, RecordVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    log.warn("Event log {} ends with a torn record at offset {}", path.getFileName(), start);
+                    break;
+                }
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                if (crc(payload) != checksum) {
+                    log.warn("Event log {} has a bad checksum at offset {}, skipping the rest", path.getFileName(), start);
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+                long recordId = payload.getLong();
+                int count = payload.getInt();
+                if (count == ABORT_MARKER) {
+                    visitor.visit(recordId, null);
+                } else if (!markersOnly) {
+                    visitor.visit(recordId, decode(payload, count));
+                }
+            }
+        }
+    }
+
+    private List<Long> segmentSeqs() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long seq) {
+        return directory.resolve(PREFIX + String.format("%020d", seq) + SUFFIX);
+    }
+
+    private static void writeFully(FileChannel channel, byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int crc(ByteBuffer payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    // Encodes one framed record: header followed by the payload
+    private static byte[] encode(long recordId, List<MachineEvent> events) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_BYTES + 12 + events.size() * 96);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(0); // header placeholder
+            out.writeLong(recordId);
+            out.writeInt(events.size());
+            for (MachineEvent e : events) {
+                writeString(out, e.getEventId());
+                writeString(out, e.getMachineId());
+                writeString(out, e.getLineId());
+                writeString(out, e.getFactoryId());
+                writeInstant(out, e.getEventTime());
+                writeInstant(out, e.getReceivedTime());
+                out.writeInt(e.getDurationMs());
+                out.writeInt(e.getDefectCount());
+                out.writeLong(e.getPayloadHash());
+            }
+            out.flush();
+            return frame(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // in-memory stream, cannot happen
+        }
+    }
+
+    private static byte[] encodeMarker(long recordId) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + 12);
+        record.putLong(HEADER_BYTES, recordId);
+        record.putInt(HEADER_BYTES + 8, ABORT_MARKER);
+        return frame(record.array());
+    }
+
+    // Fills in the length and checksum header of a record whose payload starts at HEADER_BYTES
+    private static byte[] frame(byte[] bytes) {
+        ByteBuffer record = ByteBuffer.wrap(bytes);
+        int length = record.capacity() - HEADER_BYTES;
+        record.putInt(0, length);
+        record.putInt(4, crc(record.slice(HEADER_BYTES, length)));
+        return bytes;
+    }
+
+    private static List<MachineEvent> decode(ByteBuffer payload, int count) {
+        List<MachineEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MachineEvent e = new MachineEvent();
+            e.setEventId(readString(payload));
+            e.setMachineId(readString(payload));
+            e.setLineId(readString(payload));
+            e.setFactoryId(readString(payload));
+            e.setEventTime(readInstant(payload));
+            e.setReceivedTime(readInstant(payload));
+            e.setDurationMs(payload.getInt());
+            e.setDefectCount(payload.getInt());
+            e.setPayloadHash(payload.getLong());
+            events.add(e);
+        }
+        return events;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        short length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        String value = StandardCharsets.UTF_8.decode(in.slice(in.position(), length)).toString();
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant value) throws IOException {
+        out.writeLong(value.getEpochSecond());
+        out.writeInt(value.getNano());
+    }
+
+    private static Instant readInstant(ByteBuffer in) {
+        long seconds = in.getLong();
+        return Instant.ofEpochSecond(seconds, in.getInt());
+    }
+}
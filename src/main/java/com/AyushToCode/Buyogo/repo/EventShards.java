@@ -0,0 +1,390 @@
+package com.AyushToCode.Buyogo.repo;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.utility.DefectRanking;
+import com.AyushToCode.Buyogo.utility.EventFingerprint;
+import com.AyushToCode.Buyogo.utility.StoredEventKey;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * N independent machine_events stores, each its own DataSource. Events are
+ * routed by eventId hash, so every version of an event lives on exactly one
+ * shard and dedupe stays shard-local, even when a correction changes the
+ * machine. Writes run one transaction per shard in parallel; a machine's
+ * events can be on any shard, so every query scatters to all shards and
+ * merges partial aggregates.
+ *
+ * A batch is atomic per shard, not across shards. When some shards fail, the
+ * writes of the ones that committed are handed back in a PartialWriteException
+ * so the caller can account for them. A failed batch is safe to resend: shards
+ * that already committed it report the events as deduped.
+ */
+public class EventShards implements AutoCloseable {
+
+    public static final byte ACCEPTED = 0;
+    public static final byte UPDATED = 1;
+    public static final byte DEDUPED = 2;
+
+    private static final String DEFECTS = "CASE WHEN defect_count <> -1 THEN defect_count ELSE 0 END";
+
+    private final List<Shard> shards;
+    private final ExecutorService executor;
+    private final int batchSize;
+
+    private record Shard(HikariDataSource dataSource, JdbcTemplate jdbc, TransactionTemplate tx,
+                         SeriesRepository series, DayPartitions partitions) {
+    }
+
+    /**
+     * Outcome of one shard's part of a batch. outcomes[i] is ACCEPTED, UPDATED
+     * or DEDUPED for the i-th event passed in; `saved` are the rows written and
+     * `previous` the stored versions of the updated ones.
+     */
+    public record ShardWrite(byte[] outcomes, List<MachineEvent> saved, List<StoredEventKey> previous) {
+    }
+
+    /**
+     * Thrown by write() when at least one shard failed. committed() is indexed
+     * like the shards and holds the writes of those that committed anyway,
+     * null for the failed ones; the cause is the first shard failure.
+     */
+    public static class PartialWriteException extends RuntimeException {
+        private final transient ShardWrite[] committed;
+
+        public PartialWriteException(ShardWrite[] committed, RuntimeException cause) {
+            super("Batch failed on some shards", cause);
+            this.committed = committed;
+        }
+
+        public ShardWrite[] committed() {
+            return committed;
+        }
+    }
+
+    public EventShards(List<String> jdbcUrls, int batchSize) {
+        this.batchSize = batchSize;
+        this.shards = new ArrayList<>(jdbcUrls.size());
+        for (String url : jdbcUrls) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setJdbcUrl(url);
+            dataSource.setUsername("sa");
+            dataSource.setPassword("");
+            new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+
+            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            shards.add(new Shard(dataSource, jdbc,
+                    new TransactionTemplate(new DataSourceTransactionManager(dataSource)), new SeriesRepository(jdbc),
+                    new DayPartitions(jdbc)));
+        }
+        this.executor = Executors.newFixedThreadPool(jdbcUrls.size(), r -> {
+            Thread t = new Thread(r, "event-shard");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    // String.hashCode is specified, so routing is stable across restarts
+    public int shardOf(String eventId) {
+        return Math.floorMod(eventId.hashCode(), shards.size());
+    }
+
+    /**
+     * Writes perShard.get(s) to shard s, all shards in parallel, and returns
+     * the per-shard outcomes. Events must already be validated and enriched.
+     * Every shard is waited for, so a failure is only reported once the others
+     * have committed or failed too.
+     */
+    public ShardWrite[] write(List<List<MachineEvent>> perShard) {
+        List<CompletableFuture<ShardWrite>> futures = new ArrayList<>(shards.size());
+        for (int s = 0; s < shards.size(); s++) {
+            Shard shard = shards.get(s);
+            List<MachineEvent> events = perShard.get(s);
+            futures.add(events.isEmpty()
+                    ? CompletableFuture.completedFuture(new ShardWrite(new byte[0], List.of(), List.of()))
+                    : CompletableFuture.supplyAsync(() -> shard.tx().execute(status -> write(shard, events)), executor));
+        }
+
+        ShardWrite[] results = new ShardWrite[shards.size()];
+        RuntimeException failure = null;
+        for (int s = 0; s < results.length; s++) {
+            try {
+                results[s] = futures.get(s).join();
+            } catch (CompletionException e) {
+                RuntimeException cause = (e.getCause() instanceof RuntimeException r) ? r : e;
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw new PartialWriteException(results, failure);
+        }
+        return results;
+    }
+
+    private ShardWrite write(Shard shard, List<MachineEvent> events) {
+        String[] ids = new String[events.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = events.get(i).getEventId();
+        }
+        Map<String, EventFingerprint> stored = new HashMap<>();
+        Map<String, StoredEventKey> storedKeys = new HashMap<>();
+        shard.jdbc().query("SELECT event_id, payload_hash, machine_id, line_id, factory_id, event_time, defect_count " +
+                        "FROM machine_events WHERE event_id = ANY(?)",
+                rs -> {
+                    String eventId = rs.getString(1);
+                    stored.put(eventId, new EventFingerprint(eventId, rs.getLong(2)));
+                    storedKeys.put(eventId, new StoredEventKey(eventId, rs.getString(3), rs.getString(4),
+                            rs.getString(5), rs.getTimestamp(6).toInstant(), rs.getInt(7)));
+                }, (Object) ids);
+
+        // Same rules as EventService.processBatch: the latest version of each ID is written once
+        byte[] outcomes = new byte[events.size()];
+        Map<String, MachineEvent> pending = LinkedHashMap.newLinkedHashMap(events.size());
+        for (int i = 0; i < outcomes.length; i++) {
+            MachineEvent event = events.get(i);
+            MachineEvent earlier = pending.get(event.getEventId());
+            EventFingerprint previous = (earlier == null) ? stored.get(event.getEventId()) : null;
+
+            if (earlier == null && previous == null) {
+                outcomes[i] = ACCEPTED;
+                pending.put(event.getEventId(), event);
+            } else if ((earlier != null ? earlier.getPayloadHash() : previous.payloadHash()) == event.getPayloadHash()) {
+                outcomes[i] = DEDUPED;
+            } else {
+                outcomes[i] = UPDATED;
+                pending.put(event.getEventId(), event);
+            }
+        }
+
+        List<MachineEvent> saved = new ArrayList<>(pending.values());
+        List<StoredEventKey> previous = new ArrayList<>();
+        for (MachineEvent event : saved) {
+            StoredEventKey key = storedKeys.get(event.getEventId());
+            if (key != null) {
+                previous.add(key);
+            }
+        }
+        EventBatchWriter.upsertAll(shard.jdbc(), shard.partitions(), saved, previous, batchSize);
+        return new ShardWrite(outcomes, saved, previous);
+    }
+
+    // Returns {eventsCount, defectsCount} for machineId in [start, end), summed over all shards
+    public long[] machineTotals(String machineId, Instant start, Instant end) {
+        long[] totals = new long[2];
+        for (long[] partial : scatter(s -> shards.get(s).jdbc().queryForObject(
+                "SELECT COUNT(*), COALESCE(SUM(" + DEFECTS + "), 0) FROM machine_events " +
+                "WHERE machine_id = ? AND event_time >= ? AND event_time < ?",
+                (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2)},
+                machineId, Timestamp.from(start), Timestamp.from(end)))) {
+            totals[0] += partial[0];
+            totals[1] += partial[1];
+        }
+        return totals;
+    }
+
+    // Rows of {machineId, eventCount, defectSum} for the given machines, merged over all shards
+    public List<Object[]> totalsByMachines(List<String> machineIds, Instant start, Instant end) {
+        String[] ids = machineIds.toArray(new String[0]);
+        return mergeByMachine(scatter(s -> shards.get(s).jdbc().query(
+                "SELECT machine_id, COUNT(*), SUM(" + DEFECTS + ") FROM machine_events " +
+                "WHERE machine_id = ANY(?) AND event_time >= ? AND event_time < ? GROUP BY machine_id",
+                (rs, i) -> new Object[]{rs.getString(1), rs.getLong(2), rs.getLong(3)},
+                ids, Timestamp.from(start), Timestamp.from(end))));
+    }
+
+    // Same rows for every machine on the line
+    public List<Object[]> totalsByLine(String lineId, Instant start, Instant end) {
+        return mergeByMachine(scatter(s -> shards.get(s).jdbc().query(
+                "SELECT machine_id, COUNT(*), SUM(" + DEFECTS + ") FROM machine_events " +
+                "WHERE line_id = ? AND event_time >= ? AND event_time < ? GROUP BY machine_id",
+                (rs, i) -> new Object[]{rs.getString(1), rs.getLong(2), rs.getLong(3)},
+                lineId, Timestamp.from(start), Timestamp.from(end))));
+    }
+
+    /**
+     * Top `limit` rows of {lineId, totalDefects, eventCount} for factoryId in
+     * [from, to). Each shard returns its per-line partial sums; the ranking
+     * and limit can only be applied after they are merged.
+     */
+    public List<Object[]> lineTotals(String factoryId, Instant from, Instant to, DefectRanking ranking, int limit) {
+        List<List<Object[]>> partials = scatter(s -> shards.get(s).jdbc().query(
+                "SELECT line_id, SUM(" + DEFECTS + "), COUNT(*) FROM machine_events " +
+                "WHERE factory_id = ? AND event_time >= ? AND event_time < ? GROUP BY line_id",
+                (rs, i) -> new Object[]{rs.getString(1), rs.getLong(2), rs.getLong(3)},
+                factoryId, Timestamp.from(from), Timestamp.from(to)));
+
+        Map<String, long[]> byLine = new HashMap<>();
+        for (Object[] row : concat(partials)) {
+            long[] t = byLine.computeIfAbsent((String) row[0], k -> new long[2]);
+            t[0] += (long) row[1];
+            t[1] += (long) row[2];
+        }
+
+        List<Object[]> rows = new ArrayList<>(byLine.size());
+        byLine.forEach((lineId, t) -> rows.add(new Object[]{lineId, t[0], t[1]}));
+        Comparator<Object[]> order = (ranking == DefectRanking.DEFECTS_PERCENT)
+                ? Comparator.comparingDouble(row -> (long) row[1] * 100.0 / (long) row[2])
+                : Comparator.comparingLong(row -> (long) row[1]);
+        rows.sort(order.reversed());
+        return rows.size() > limit ? rows.subList(0, limit) : rows;
+    }
+
+    // Raw bucketed series from every shard; bucket sums add up
+    public void series(SeriesRepository.Scope scope, String id, Instant base, long intervalSeconds,
+                       Instant from, Instant to, SeriesRepository.BucketConsumer consumer) {
+        SeriesRepository.BucketConsumer shared = (idx, count, defects) -> {
+            synchronized (consumer) {
+                consumer.accept(idx, count, defects);
+            }
+        };
+        scatter(s -> {
+            shards.get(s).series().rawSeries(scope, id, base, intervalSeconds, from, to, shared);
+            return null;
+        });
+    }
+
+    /**
+     * Events of one machine, line or factory in [from, to) from every shard,
+     * merged into event-time order like the unsharded export. Each shard reads
+     * its overlapping day tables through one open cursor and only its current
+     * row is held, so memory stays flat. The stream must be closed to release
+     * the cursors.
+     */
+    public Stream<MachineEvent> streamEvents(SeriesRepository.Scope scope, String id, Instant from, Instant to) {
+        List<Stream<MachineEvent>> cursors = new ArrayList<>(shards.size());
+        // Current row of each shard with the rest of its cursor, earliest first
+        PriorityQueue<Map.Entry<MachineEvent, Iterator<MachineEvent>>> heads =
+                new PriorityQueue<>(Comparator.comparing(head -> head.getKey().getEventTime()));
+        try {
+            for (Shard shard : shards) {
+                Stream<MachineEvent> cursor = shard.partitions().streamEvents(scope, id, from, to);
+                cursors.add(cursor);
+                Iterator<MachineEvent> rows = cursor.iterator();
+                if (rows.hasNext()) {
+                    heads.add(Map.entry(rows.next(), rows));
+                }
+            }
+        } catch (RuntimeException e) {
+            cursors.forEach(Stream::close);
+            throw e;
+        }
+
+        Iterator<MachineEvent> merged = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public MachineEvent next() {
+                Map.Entry<MachineEvent, Iterator<MachineEvent>> head = heads.poll();
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+                Iterator<MachineEvent> rows = head.getValue();
+                if (rows.hasNext()) {
+                    heads.add(Map.entry(rows.next(), rows));
+                }
+                return head.getKey();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED), false)
+                .onClose(() -> cursors.forEach(Stream::close));
+    }
+
+    // Feeds every event at or after `from` on every shard to sink, one shard after another
+    public void forEachEventSince(Instant from, Consumer<MachineEvent> sink) {
+        for (Shard shard : shards) {
+            shard.jdbc().query("SELECT " + DayPartitions.EVENT_COLUMNS + " FROM machine_events WHERE event_time >= ?",
+                    (RowCallbackHandler) rs -> sink.accept(DayPartitions.EVENT_ROW.mapRow(rs, 0)), Timestamp.from(from));
+        }
+    }
+
+    // Drops the day tables before firstKeptDay on every shard and returns how many shard days were dropped
+    public int dropBefore(LocalDate firstKeptDay) {
+        int dropped = 0;
+        for (List<LocalDate> days : scatter(s -> shards.get(s).partitions().dropBefore(firstKeptDay))) {
+            dropped += days.size();
+        }
+        return dropped;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (Shard shard : shards) {
+            // Drops the in-memory database, so a restarted context starts empty
+            shard.jdbc().execute("SHUTDOWN");
+            shard.dataSource().close();
+        }
+    }
+
+    // Runs query(shardIndex) on every shard in parallel and returns the results in shard order
+    private <T> List<T> scatter(IntFunction<T> query) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+        for (int s = 0; s < shards.size(); s++) {
+            int shard = s;
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(shard), executor));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    private static List<Object[]> concat(List<List<Object[]>> partials) {
+        List<Object[]> rows = new ArrayList<>();
+        partials.forEach(rows::addAll);
+        return rows;
+    }
+
+    // Adds up {machineId, eventCount, defectSum} rows of the same machine from different shards
+    private static List<Object[]> mergeByMachine(List<List<Object[]>> partials) {
+        Map<String, Object[]> byMachine = new LinkedHashMap<>();
+        for (Object[] row : concat(partials)) {
+            Object[] merged = byMachine.putIfAbsent((String) row[0], row);
+            if (merged != null) {
+                merged[1] = (long) merged[1] + (long) row[1];
+                merged[2] = (long) merged[2] + (long) row[2];
+            }
+        }
+        return new ArrayList<>(byMachine.values());
+    }
+}
@@ -1,6 +1,9 @@
 package com.AyushToCode.Buyogo.repo;
 
 import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.utility.EventFingerprint;
+import com.AyushToCode.Buyogo.utility.StoredEventKey;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -11,6 +14,15 @@ import java.util.List;
 public interface MachineRepository extends JpaRepository<MachineEvent, String> {
     List<MachineEvent> findAllByEventIdIn(List<String> eventIds);
 
+    @Query("SELECT new com.AyushToCode.Buyogo.utility.EventFingerprint(e.eventId, e.payloadHash) " +
+            "FROM MachineEvent e WHERE e.eventId IN :ids")
+    List<EventFingerprint> findFingerprints(@Param("ids") List<String> eventIds);
+
+    @Query("SELECT new com.AyushToCode.Buyogo.utility.StoredEventKey(" +
+            "e.eventId, e.machineId, e.lineId, e.factoryId, e.eventTime, e.defectCount) " +
+            "FROM MachineEvent e WHERE e.eventId IN :ids")
+    List<StoredEventKey> findStoredKeys(@Param("ids") List<String> eventIds);
+
     @Query("SELECT COUNT(e), SUM(CASE WHEN e.defectCount != -1 THEN e.defectCount ELSE 0 END) " +
             "FROM MachineEvent e " +
             "WHERE e.machineId = :mId AND e.eventTime >= :start AND e.eventTime < :end")
@@ -18,6 +30,22 @@ public interface MachineRepository extends JpaRepository<MachineEvent, String> {
                           @Param("start") Instant start,
                           @Param("end") Instant end);
 
+    @Query("SELECT e.machineId, COUNT(e), SUM(CASE WHEN e.defectCount != -1 THEN e.defectCount ELSE 0 END) " +
+            "FROM MachineEvent e " +
+            "WHERE e.machineId IN :mIds AND e.eventTime >= :start AND e.eventTime < :end " +
+            "GROUP BY e.machineId")
+    List<Object[]> getStatsDataByMachines(@Param("mIds") List<String> machineIds,
+                                          @Param("start") Instant start,
+                                          @Param("end") Instant end);
+
+    @Query("SELECT e.machineId, COUNT(e), SUM(CASE WHEN e.defectCount != -1 THEN e.defectCount ELSE 0 END) " +
+            "FROM MachineEvent e " +
+            "WHERE e.lineId = :lineId AND e.eventTime >= :start AND e.eventTime < :end " +
+            "GROUP BY e.machineId")
+    List<Object[]> getStatsDataByLine(@Param("lineId") String lineId,
+                                      @Param("start") Instant start,
+                                      @Param("end") Instant end);
+
     @Query("SELECT e.lineId, " +
             "SUM(CASE WHEN e.defectCount != -1 THEN e.defectCount ELSE 0 END), " +
             "COUNT(e) " +
@@ -28,4 +56,29 @@ public interface MachineRepository extends JpaRepository<MachineEvent, String> {
     List<Object[]> findTopDefectLines(@Param("fId") String factoryId,
                                       @Param("from") Instant from,
                                       @Param("to") Instant to);
+
+    // Same as findTopDefectLines, but the database stops after `limit` groups
+    @Query("SELECT e.lineId, " +
+            "SUM(CASE WHEN e.defectCount != -1 THEN e.defectCount ELSE 0 END), " +
+            "COUNT(e) " +
+            "FROM MachineEvent e " +
+            "WHERE e.factoryId = :fId AND e.eventTime >= :from AND e.eventTime < :to " +
+            "GROUP BY e.lineId " +
+            "ORDER BY SUM(CASE WHEN e.defectCount != -1 THEN e.defectCount ELSE 0 END) DESC")
+    List<Object[]> findTopDefectLines(@Param("fId") String factoryId,
+                                      @Param("from") Instant from,
+                                      @Param("to") Instant to,
+                                      Limit limit);
+
+    @Query("SELECT e.lineId, " +
+            "SUM(CASE WHEN e.defectCount != -1 THEN e.defectCount ELSE 0 END), " +
+            "COUNT(e) " +
+            "FROM MachineEvent e " +
+            "WHERE e.factoryId = :fId AND e.eventTime >= :from AND e.eventTime < :to " +
+            "GROUP BY e.lineId " +
+            "ORDER BY SUM(CASE WHEN e.defectCount != -1 THEN e.defectCount ELSE 0 END) * 100.0 / COUNT(e) DESC")
+    List<Object[]> findTopDefectLinesByPercent(@Param("fId") String factoryId,
+                                               @Param("from") Instant from,
+                                               @Param("to") Instant to,
+                                               Limit limit);
 }
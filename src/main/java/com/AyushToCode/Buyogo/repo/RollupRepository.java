@@ -0,0 +1,123 @@
+package com.AyushToCode.Buyogo.repo;
+
+import com.AyushToCode.Buyogo.utility.DefectRanking;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * JDBC access to machine_minute_rollups. Deltas are applied with one
+ * MERGE ... USING batch per day table (see DayPartitions) so counts are
+ * incremented in place, not overwritten; queries read the view.
+ */
+@Repository
+@RequiredArgsConstructor
+public class RollupRepository {
+
+    private static final String APPLY_DELTA_SQL =
+            "MERGE INTO %s r " +
+            "USING (VALUES (CAST(? AS VARCHAR(50)), CAST(? AS TIMESTAMP), CAST(? AS VARCHAR(50)), " +
+            "CAST(? AS VARCHAR(50)), CAST(? AS BIGINT), CAST(? AS BIGINT))) " +
+            "AS d(machine_id, bucket_start, line_id, factory_id, cnt, defects) " +
+            "ON r.machine_id = d.machine_id AND r.bucket_start = d.bucket_start " +
+            "WHEN MATCHED THEN UPDATE SET r.event_count = r.event_count + d.cnt, " +
+            "r.defect_sum = r.defect_sum + d.defects, r.line_id = d.line_id, r.factory_id = d.factory_id " +
+            "WHEN NOT MATCHED THEN INSERT (machine_id, bucket_start, line_id, factory_id, event_count, defect_sum) " +
+            "VALUES (d.machine_id, d.bucket_start, d.line_id, d.factory_id, d.cnt, d.defects)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final DayPartitions partitions;
+
+    public record Delta(String machineId, Instant bucketStart, String lineId, String factoryId,
+                        long eventCount, long defectSum) {
+    }
+
+    public void applyDeltas(List<Delta> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        Map<LocalDate, List<Delta>> byDay = new TreeMap<>();
+        for (Delta delta : deltas) {
+            byDay.computeIfAbsent(DayPartitions.dayOf(delta.bucketStart()), d -> new ArrayList<>()).add(delta);
+        }
+        partitions.ensure(byDay.keySet());
+
+        byDay.forEach((day, dayDeltas) -> jdbcTemplate.batchUpdate(
+                APPLY_DELTA_SQL.formatted(DayPartitions.rollupTable(day)), dayDeltas, dayDeltas.size(), (ps, d) -> {
+                    ps.setString(1, d.machineId());
+                    ps.setTimestamp(2, Timestamp.from(d.bucketStart()));
+                    ps.setString(3, d.lineId());
+                    ps.setString(4, d.factoryId());
+                    ps.setLong(5, d.eventCount());
+                    ps.setLong(6, d.defectSum());
+                }));
+    }
+
+    // Returns {eventCount, defectSum} over whole buckets in [from, to)
+    public long[] machineTotals(String machineId, Instant from, Instant to) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(event_count), 0), COALESCE(SUM(defect_sum), 0) " +
+                "FROM machine_minute_rollups " +
+                "WHERE machine_id = ? AND bucket_start >= ? AND bucket_start < ?",
+                (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2)},
+                machineId, Timestamp.from(from), Timestamp.from(to));
+    }
+
+    // Rows of {machineId, eventCount, defectSum} per machine over whole buckets in [from, to)
+    public List<Object[]> totalsByMachines(List<String> machineIds, Instant from, Instant to) {
+        return jdbcTemplate.query(
+                "SELECT machine_id, SUM(event_count), SUM(defect_sum) " +
+                "FROM machine_minute_rollups " +
+                "WHERE machine_id = ANY(?) AND bucket_start >= ? AND bucket_start < ? " +
+                "GROUP BY machine_id",
+                (rs, i) -> new Object[]{rs.getString(1), rs.getLong(2), rs.getLong(3)},
+                machineIds.toArray(new String[0]), Timestamp.from(from), Timestamp.from(to));
+    }
+
+    // Same as totalsByMachines, for every machine on the line
+    public List<Object[]> totalsByLine(String lineId, Instant from, Instant to) {
+        return jdbcTemplate.query(
+                "SELECT machine_id, SUM(event_count), SUM(defect_sum) " +
+                "FROM machine_minute_rollups " +
+                "WHERE line_id = ? AND bucket_start >= ? AND bucket_start < ? " +
+                "GROUP BY machine_id",
+                (rs, i) -> new Object[]{rs.getString(1), rs.getLong(2), rs.getLong(3)},
+                lineId, Timestamp.from(from), Timestamp.from(to));
+    }
+
+    // Rows of {lineId, defectSum, eventCount} over whole buckets in [from, to)
+    public List<Object[]> lineTotals(String factoryId, Instant from, Instant to) {
+        return jdbcTemplate.query(
+                "SELECT line_id, SUM(defect_sum), SUM(event_count) " +
+                "FROM machine_minute_rollups " +
+                "WHERE factory_id = ? AND bucket_start >= ? AND bucket_start < ? " +
+                "GROUP BY line_id",
+                (rs, i) -> new Object[]{rs.getString(1), rs.getLong(2), rs.getLong(3)},
+                factoryId, Timestamp.from(from), Timestamp.from(to));
+    }
+
+    // Top `limit` lines by the given ranking over whole buckets in [from, to)
+    public List<Object[]> topLines(String factoryId, Instant from, Instant to, DefectRanking ranking, int limit) {
+        String orderBy = (ranking == DefectRanking.DEFECTS_PERCENT)
+                ? "SUM(defect_sum) * 100.0 / SUM(event_count)"
+                : "SUM(defect_sum)";
+        return jdbcTemplate.query(
+                "SELECT line_id, SUM(defect_sum), SUM(event_count) " +
+                "FROM machine_minute_rollups " +
+                "WHERE factory_id = ? AND bucket_start >= ? AND bucket_start < ? " +
+                "GROUP BY line_id HAVING SUM(event_count) > 0 " +
+                "ORDER BY " + orderBy + " DESC LIMIT ?",
+                (rs, i) -> new Object[]{rs.getString(1), rs.getLong(2), rs.getLong(3)},
+                factoryId, Timestamp.from(from), Timestamp.from(to), limit);
+    }
+}
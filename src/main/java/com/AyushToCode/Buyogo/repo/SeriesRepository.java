@@ -0,0 +1,69 @@
+package com.AyushToCode.Buyogo.repo;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * Bucketed time series in one ordered, grouped scan. Rows are reported to the
+ * callback as (bucketIndex, eventsCount, defectsCount), where bucketIndex is
+ * the number of whole intervals between `base` and the bucket.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SeriesRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Column the series is filtered on; fixed names so nothing user-supplied reaches the SQL
+    public enum Scope {
+        MACHINE("machine_id"), LINE("line_id"), FACTORY("factory_id");
+
+        private final String column;
+
+        Scope(String column) {
+            this.column = column;
+        }
+
+        String column() {
+            return column;
+        }
+    }
+
+    @FunctionalInterface
+    public interface BucketConsumer {
+        void accept(long bucketIndex, long eventsCount, long defectsCount);
+    }
+
+    // Reads whole-minute buckets from machine_minute_rollups in [from, to)
+    public void rollupSeries(Scope scope, String id, Instant base, long intervalSeconds,
+                             Instant from, Instant to, BucketConsumer consumer) {
+        query("SELECT DATEDIFF('SECOND', CAST(? AS TIMESTAMP), bucket_start) / ? AS idx, " +
+                        "event_count AS cnt, defect_sum AS defects " +
+                        "FROM machine_minute_rollups " +
+                        "WHERE " + scope.column + " = ? AND bucket_start >= ? AND bucket_start < ?",
+                id, base, intervalSeconds, from, to, consumer);
+    }
+
+    // Same buckets computed from raw machine_events rows in [from, to)
+    public void rawSeries(Scope scope, String id, Instant base, long intervalSeconds,
+                          Instant from, Instant to, BucketConsumer consumer) {
+        query("SELECT DATEDIFF('SECOND', CAST(? AS TIMESTAMP), event_time) / ? AS idx, " +
+                        "1 AS cnt, CASE WHEN defect_count <> -1 THEN defect_count ELSE 0 END AS defects " +
+                        "FROM machine_events " +
+                        "WHERE " + scope.column + " = ? AND event_time >= ? AND event_time < ?",
+                id, base, intervalSeconds, from, to, consumer);
+    }
+
+    private void query(String bucketedRows, String id, Instant base, long intervalSeconds,
+                       Instant from, Instant to, BucketConsumer consumer) {
+        jdbcTemplate.query(
+                "SELECT idx, SUM(cnt), SUM(defects) FROM (" + bucketedRows + ") b GROUP BY idx ORDER BY idx",
+                (RowCallbackHandler) rs -> consumer.accept(rs.getLong(1), rs.getLong(2), rs.getLong(3)),
+                Timestamp.from(base), intervalSeconds, id, Timestamp.from(from), Timestamp.from(to));
+    }
+}
@@ -0,0 +1,215 @@
+package com.AyushToCode.Buyogo.service;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.utility.InvalidRequestException;
+import com.AyushToCode.Buyogo.utility.StoredEventKey;
+import com.AyushToCode.Buyogo.utility.TopDefectMachineResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Approximate top-K machines by defects, maintained on ingest with the
+ * Space-Saving algorithm. Each factory keeps one bounded sketch per hour for
+ * the retention period; a query merges the sketches of the hours overlapping
+ * the window, so its cost depends on capacity x hours, not on the row count.
+ *
+ * Windows are rounded out to whole hours, so results are estimates with an
+ * error bound, and windows reaching back past the retention period are rejected
+ * rather than answered from the hours that are left. A correction removes the
+ * old version's defects from the machine's counter (when it is still tracked)
+ * and adds the new ones. A corrected counter never drops below its error term,
+ * and newcomers inherit at least the largest count evicted so far, so estimates
+ * stay at or above the true count even after decrements.
+ */
+@Service
+public class DefectHeavyHitters {
+
+    private static final long HOUR_SECONDS = 3600;
+
+    // Counters kept per sketch; machines beyond this evict the smallest counter
+    @Value("${buyogo.heavy-hitters.capacity:256}")
+    private int capacity;
+
+    @Value("${buyogo.heavy-hitters.retention-hours:168}")
+    private int retentionHours;
+
+    private final Map<String, Sketch[]> factories = new ConcurrentHashMap<>();
+
+    /**
+     * Applies the written events once the surrounding transaction commits, so
+     * a rolled-back batch never reaches the sketches. `previous` holds the
+     * stored versions of the updated events, whose defects are taken back out.
+     */
+    public void recordAfterCommit(List<MachineEvent> saved, List<StoredEventKey> previous) {
+        if (saved.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            record(saved, previous);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record(saved, previous);
+            }
+        });
+    }
+
+    public void record(List<MachineEvent> saved, List<StoredEventKey> previous) {
+        for (StoredEventKey old : previous) {
+            add(old.factoryId(), old.machineId(), old.eventTime(), -old.defectCount());
+        }
+        for (MachineEvent event : saved) {
+            add(event.getFactoryId(), event.getMachineId(), event.getEventTime(), event.getDefectCount());
+        }
+    }
+
+    // Negative defects take a previous version back out
+    private void add(String factoryId, String machineId, Instant eventTime, int defects) {
+        if (defects == 0 || defects == -1 || factoryId == null) {
+            return; // 0 and -1 (unknown) do not change the ranking
+        }
+        boolean removal = defects < 0;
+
+        long hour = Math.floorDiv(eventTime.getEpochSecond(), HOUR_SECONDS);
+        Sketch[] ring = removal ? factories.get(factoryId)
+                : factories.computeIfAbsent(factoryId, f -> new Sketch[retentionHours]);
+        if (ring == null) {
+            return;
+        }
+        int slot = (int) Math.floorMod(hour, (long) retentionHours);
+
+        Sketch sketch;
+        synchronized (ring) {
+            sketch = ring[slot];
+            if (removal && (sketch == null || sketch.hour != hour)) {
+                return; // that hour is no longer kept
+            }
+            if (sketch == null || sketch.hour < hour) {
+                sketch = new Sketch(hour, capacity);
+                ring[slot] = sketch;
+            } else if (sketch.hour > hour) {
+                return; // older than the retention period
+            }
+        }
+        sketch.offer(machineId, defects);
+    }
+
+    // Drops the sketches of hours before cutoff, after retention deleted their events
+    public void expireBefore(Instant cutoff) {
+        long firstKeptHour = Math.floorDiv(cutoff.getEpochSecond(), HOUR_SECONDS);
+        for (Sketch[] ring : factories.values()) {
+            synchronized (ring) {
+                for (int i = 0; i < ring.length; i++) {
+                    if (ring[i] != null && ring[i].hour < firstKeptHour) {
+                        ring[i] = null;
+                    }
+                }
+            }
+        }
+    }
+
+    public List<TopDefectMachineResponse> top(String factoryId, Instant from, Instant to, int limit) {
+        long firstHour = Math.floorDiv(from.getEpochSecond(), HOUR_SECONDS);
+        long lastHour = Math.floorDiv(to.getEpochSecond() - 1, HOUR_SECONDS);
+
+        // Hours older than the ring are gone; a partial answer would understate every machine
+        long oldestKeptHour = Math.floorDiv(Instant.now().getEpochSecond(), HOUR_SECONDS) - retentionHours + 1;
+        if (firstHour < oldestKeptHour) {
+            throw new InvalidRequestException("Window starts before the heavy-hitters retention of "
+                    + retentionHours + " hours");
+        }
+
+        Sketch[] ring = factories.get(factoryId);
+        if (ring == null) {
+            return List.of();
+        }
+
+        // Merging Space-Saving summaries keeps the same guarantees: sum counts and errors
+        Map<String, long[]> merged = new HashMap<>();
+        synchronized (ring) {
+            for (Sketch sketch : ring) {
+                if (sketch != null && sketch.hour >= firstHour && sketch.hour <= lastHour) {
+                    sketch.mergeInto(merged);
+                }
+            }
+        }
+
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(merged.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+
+        List<TopDefectMachineResponse> result = new ArrayList<>(Math.min(limit, entries.size()));
+        for (int i = 0; i < entries.size() && i < limit; i++) {
+            Map.Entry<String, long[]> e = entries.get(i);
+            result.add(TopDefectMachineResponse.builder()
+                    .machineId(e.getKey())
+                    .estimatedDefects(e.getValue()[0])
+                    .maxError(e.getValue()[1])
+                    .build());
+        }
+        return result;
+    }
+
+    private static final class Sketch {
+        final long hour;
+        final int capacity;
+        // machineId -> {count, error}
+        final Map<String, long[]> counters;
+        // Largest count evicted so far: an upper bound on any untracked machine's true count
+        long evicted;
+
+        Sketch(long hour, int capacity) {
+            this.hour = hour;
+            this.capacity = capacity;
+            this.counters = new HashMap<>(capacity * 2);
+        }
+
+        synchronized void offer(String machineId, long weight) {
+            long[] c = counters.get(machineId);
+            if (c != null) {
+                // The error part was never this machine's, so a correction cannot take it back out
+                c[0] = Math.max(c[1], c[0] + weight);
+                return;
+            }
+            if (weight < 0) {
+                return; // untracked: its estimate (the minimum counter) still bounds the true count
+            }
+            if (counters.size() < capacity) {
+                counters.put(machineId, new long[]{weight, 0});
+                return;
+            }
+
+            // Replace the minimum counter; the newcomer inherits its count as error, or
+            // an earlier eviction's when corrections have since pulled the minimum below it
+            String minKey = null;
+            long min = Long.MAX_VALUE;
+            for (Map.Entry<String, long[]> e : counters.entrySet()) {
+                if (e.getValue()[0] < min) {
+                    min = e.getValue()[0];
+                    minKey = e.getKey();
+                }
+            }
+            counters.remove(minKey);
+            evicted = Math.max(evicted, min);
+            counters.put(machineId, new long[]{evicted + weight, evicted});
+        }
+
+        synchronized void mergeInto(Map<String, long[]> merged) {
+            counters.forEach((machineId, c) -> {
+                long[] m = merged.computeIfAbsent(machineId, k -> new long[2]);
+                m[0] += c[0];
+                m[1] += c[1];
+            });
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.AyushToCode.Buyogo.service;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.repo.DayPartitions;
+import com.AyushToCode.Buyogo.repo.EventShards;
+import com.AyushToCode.Buyogo.repo.SeriesRepository;
+import com.AyushToCode.Buyogo.utility.InvalidRequestException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.SerializationFeature;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Streams raw events for a window straight to the response. Only the day
+ * tables overlapping the window are read, one cursor at a time and in day
+ * order, and rows are plain objects outside any persistence context, so memory
+ * stays flat regardless of the row count. With sharding, the shards' cursors
+ * are merged by event time instead.
+ */
+@Service
+public class EventExportService {
+
+    public enum Format {
+        NDJSON, CSV;
+
+        public static Format fromParam(String format) {
+            return switch (format.toLowerCase()) {
+                case "ndjson" -> NDJSON;
+                case "csv" -> CSV;
+                default -> throw new InvalidRequestException("Unknown format: " + format);
+            };
+        }
+    }
+
+    private static final String CSV_HEADER =
+            "eventId,machineId,lineId,factoryId,eventTime,receivedTime,durationMs,defectCount\n";
+
+    // Rows between flushes of the response stream
+    private static final int FLUSH_EVERY = 1000;
+
+    private final DayPartitions partitions;
+
+    private final ObjectProvider<EventShards> eventShards;
+
+    // NDJSON needs one record per line, whatever spring.jackson.serialization.INDENT_OUTPUT says
+    private final ObjectWriter rowWriter;
+
+    public EventExportService(DayPartitions partitions, ObjectProvider<EventShards> eventShards,
+                              ObjectMapper objectMapper) {
+        this.partitions = partitions;
+        this.eventShards = eventShards;
+        this.rowWriter = objectMapper.writerFor(MachineEvent.class).without(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    @Transactional(readOnly = true)
+    public long export(SeriesRepository.Scope scope, String id, Instant from, Instant to,
+                       Format format, OutputStream out) throws IOException {
+        try (Stream<MachineEvent> rows = open(scope, id, from, to)) {
+            return (format == Format.CSV) ? writeCsv(rows.iterator(), out) : writeNdjson(rows.iterator(), out);
+        }
+    }
+
+    private Stream<MachineEvent> open(SeriesRepository.Scope scope, String id, Instant from, Instant to) {
+        EventShards shards = eventShards.getIfAvailable();
+        if (shards != null) {
+            return shards.streamEvents(scope, id, from, to);
+        }
+        return partitions.streamEvents(scope, id, from, to);
+    }
+
+    private long writeNdjson(Iterator<MachineEvent> rows, OutputStream out) throws IOException {
+        long count = 0;
+        OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        while (rows.hasNext()) {
+            MachineEvent event = rows.next();
+            buffered.write(rowWriter.writeValueAsBytes(event));
+            buffered.write('\n');
+            if (++count % FLUSH_EVERY == 0) {
+                buffered.flush();
+            }
+        }
+        buffered.flush();
+        return count;
+    }
+
+    private long writeCsv(Iterator<MachineEvent> rows, OutputStream out) throws IOException {
+        long count = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write(CSV_HEADER);
+        while (rows.hasNext()) {
+            MachineEvent event = rows.next();
+            writer.append(csv(event.getEventId())).append(',')
+                    .append(csv(event.getMachineId())).append(',')
+                    .append(csv(event.getLineId())).append(',')
+                    .append(csv(event.getFactoryId())).append(',')
+                    .append(String.valueOf(event.getEventTime())).append(',')
+                    .append(String.valueOf(event.getReceivedTime())).append(',')
+                    .append(Integer.toString(event.getDurationMs())).append(',')
+                    .append(Integer.toString(event.getDefectCount())).append('\n');
+            if (++count % FLUSH_EVERY == 0) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    // Quotes a CSV field when it contains a separator, quote or newline
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
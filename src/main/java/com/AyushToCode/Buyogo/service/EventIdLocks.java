@@ -0,0 +1,90 @@
+package com.AyushToCode.Buyogo.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-eventId claims held from before the dedupe lookup until the transaction
+ * completes, so two batches sharing an ID are classified (accepted/updated/
+ * deduped) one after the other instead of both seeing "not existing".
+ *
+ * Only the exact IDs are claimed, in a map that holds just the in-flight ones,
+ * so batches wait for each other only when they really share an ID. Claims
+ * are taken in ascending ID order, so batches cannot deadlock; a batch that
+ * cannot get an ID within timeoutMs gives up with CannotAcquireLockException.
+ */
+@Service
+public class EventIdLocks {
+
+    private final Map<String, Claim> claims = new ConcurrentHashMap<>();
+
+    private final long timeoutMs;
+
+    public EventIdLocks(@Value("${buyogo.ingest.lock-timeout-ms:10000}") long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    // One per transaction; released once all its IDs are given back
+    private static final class Claim {
+        final CountDownLatch released = new CountDownLatch(1);
+    }
+
+    /**
+     * Claims the given IDs for the current transaction and releases them after
+     * it commits or rolls back.
+     */
+    public void lockUntilCompletion(List<String> eventIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Event ID locks must be taken inside a transaction");
+        }
+
+        Claim claim = new Claim();
+        List<String> held = new ArrayList<>(eventIds.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        try {
+            for (String eventId : new TreeSet<>(eventIds)) {
+                Claim other;
+                while ((other = claims.putIfAbsent(eventId, claim)) != null) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || !other.released.await(remaining, TimeUnit.NANOSECONDS)) {
+                        throw new CannotAcquireLockException("Timed out waiting for event " + eventId
+                                + " held by a concurrent batch");
+                    }
+                }
+                held.add(eventId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(held, claim);
+            throw new CannotAcquireLockException("Interrupted while waiting for event locks", e);
+        } catch (RuntimeException e) {
+            release(held, claim);
+            throw e;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                release(held, claim);
+            }
+        });
+    }
+
+    private void release(List<String> held, Claim claim) {
+        for (String eventId : held) {
+            claims.remove(eventId, claim);
+        }
+        claim.released.countDown();
+    }
+}
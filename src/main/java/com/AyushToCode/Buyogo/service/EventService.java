@@ -1,21 +1,44 @@
 package com.AyushToCode.Buyogo.service;
 
 import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.repo.EventBatchWriter;
+import com.AyushToCode.Buyogo.repo.EventLog;
+import com.AyushToCode.Buyogo.repo.EventShards;
 import com.AyushToCode.Buyogo.repo.MachineRepository;
+import com.AyushToCode.Buyogo.repo.SeriesRepository;
 import com.AyushToCode.Buyogo.utility.BatchResponse;
+import com.AyushToCode.Buyogo.utility.DefectRanking;
+import com.AyushToCode.Buyogo.utility.EventFingerprint;
+import com.AyushToCode.Buyogo.utility.InvalidRequestException;
+import com.AyushToCode.Buyogo.utility.PayloadHasher;
+import com.AyushToCode.Buyogo.utility.RejectionReason;
+import com.AyushToCode.Buyogo.utility.SeriesPoint;
 import com.AyushToCode.Buyogo.utility.StatsResponse;
+import com.AyushToCode.Buyogo.utility.StoredEventKey;
 import com.AyushToCode.Buyogo.utility.TopDefectLineResponse;
+import com.AyushToCode.Buyogo.utility.TopDefectMachineResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -23,88 +46,439 @@ public class EventService {
 
     private final MachineRepository repository;
 
+    private final EventBatchWriter batchWriter;
+
+    private final RollupService rollupService;
+
+    private final TopologyRegistry topologyRegistry;
+
+    private final IngestMetrics metrics;
+
+    private final DefectHeavyHitters heavyHitters;
+
+    private final EventIdLocks eventIdLocks;
+
+    private final SeriesRepository seriesRepository;
+
+    private final HotEventStore hotStore;
+
+    private final MachineStatusMonitor statusMonitor;
+
+    // Present only in durable mode (buyogo.durable.enabled)
+    private final ObjectProvider<EventLog> eventLog;
+
+    // Present only when buyogo.sharding.shards > 0
+    private final ObjectProvider<EventShards> eventShards;
+
+    // When enabled, per-minute rollups are maintained on ingest and used by the stats queries
+    @Value("${buyogo.rollups.enabled:false}")
+    private boolean rollupsEnabled;
+
+    @Value("${buyogo.series.max-buckets:10000}")
+    private int maxSeriesBuckets;
+
     @Transactional
     public BatchResponse processBatch(List<MachineEvent> events) {
         BatchResponse summary = new BatchResponse();
+        processBatch(events, Collections.nCopies(events.size(), summary));
+        return summary;
+    }
+
+    /**
+     * Same as processBatch(events), but the outcome of events.get(i) is counted
+     * into summaries.get(i). Lets the async writer coalesce events from many
+     * requests into one write while still reporting per request.
+     */
+    @Transactional
+    public void processBatch(List<MachineEvent> events, List<BatchResponse> summaries) {
+        long batchStart = System.nanoTime();
+        int size = events.size();
+
+        // One clock read per batch: shared receivedTime and future-time limit
+        Instant now = Instant.now();
+        Instant futureLimit = now.plus(15, ChronoUnit.MINUTES);
 
         // 1. Collect all IDs to check the DB in one single trip
-        List<String> incomingIds = events.stream()
-                .map(MachineEvent::getEventId)
-                .toList();
+        List<String> incomingIds = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            incomingIds.add(events.get(i).getEventId());
+        }
+
+        // Serialize against other batches sharing any of these IDs until commit
+        eventIdLocks.lockUntilCompletion(incomingIds);
 
-        // 2. Fetch all existing records at once for speed
-        List<MachineEvent> existingEvents = repository.findAllById(incomingIds);
-        Map<String, MachineEvent> existingMap = existingEvents.stream()
-                .collect(Collectors.toMap(MachineEvent::getEventId, e -> e));
+        EventShards shards = eventShards.getIfAvailable();
+        if (shards != null) {
+            processSharded(events, summaries, shards, now, futureLimit, batchStart);
+            return;
+        }
+
+        // 2. Fetch only (eventId, payloadHash) of existing records, no entities are loaded.
+        // The projection records are kept as map values, so hashes are never boxed.
+        List<EventFingerprint> existingEvents = repository.findFingerprints(incomingIds);
+        Map<String, EventFingerprint> existingMap = HashMap.newHashMap(existingEvents.size());
+        for (EventFingerprint fingerprint : existingEvents) {
+            existingMap.put(fingerprint.eventId(), fingerprint);
+        }
+        long lookupEnd = System.nanoTime();
+        metrics.record(IngestMetrics.Stage.DEDUPE_LOOKUP, lookupEnd - batchStart);
 
-        List<MachineEvent> toSave = new ArrayList<>();
+        // Latest version of every event to write, so repeated IDs inside a batch collapse to one row
+        Map<String, MachineEvent> pending = LinkedHashMap.newLinkedHashMap(size);
+        classify(events, summaries, existingMap, pending, now, futureLimit);
 
-        for (MachineEvent event : events) {
-            // Validation: Duration
-            if (event.getDurationMs() < 0 || event.getDurationMs() > 21600000) {
-                summary.addRejection(event.getEventId(), "INVALID_DURATION");
+        long saveStart = System.nanoTime();
+
+        List<MachineEvent> toSave = new ArrayList<>(pending.values());
+        persist(toSave, existingMap.keySet());
+
+        logUntilCompletion(toSave);
+
+        long batchEnd = System.nanoTime();
+        metrics.record(IngestMetrics.Stage.SAVE, batchEnd - saveStart);
+        metrics.record(IngestMetrics.Stage.PROCESS_BATCH, batchEnd - batchStart);
+    }
+
+    /**
+     * The per-event loop of processBatch: validates and enriches each event,
+     * counts its outcome into summaries.get(i) and puts the versions to write
+     * into pending, keyed by eventId. existing holds the stored fingerprints.
+     * Public so the allocation test drives this exact loop.
+     */
+    public void classify(List<MachineEvent> events, List<BatchResponse> summaries,
+                         Map<String, EventFingerprint> existing, Map<String, MachineEvent> pending,
+                         Instant now, Instant futureLimit) {
+        long validationNanos = 0;
+        long enrichNanos = 0;
+
+        for (int i = 0; i < events.size(); i++) {
+            MachineEvent event = events.get(i);
+            BatchResponse summary = summaries.get(i);
+
+            // Validation: Duration and Future Time
+            long t0 = System.nanoTime();
+            RejectionReason rejection = validate(event, futureLimit);
+            long t1 = System.nanoTime();
+            validationNanos += t1 - t0;
+            if (rejection != null) {
+                summary.addRejection(event.getEventId(), rejection);
+                metrics.rejected(rejection);
                 continue;
             }
 
             // Enrich the data with factory and line mapping
-            enrichEventData(event);
-
-            // Validation: Future Time (15 min limit)
-            if (event.getEventTime().isAfter(Instant.now().plus(15, ChronoUnit.MINUTES))) {
-                summary.addRejection(event.getEventId(), "FUTURE_EVENT_TIME");
+            boolean known = enrichEventData(event);
+            enrichNanos += System.nanoTime() - t1;
+            if (!known) {
+                summary.addRejection(event.getEventId(), RejectionReason.UNKNOWN_MACHINE);
+                metrics.rejected(RejectionReason.UNKNOWN_MACHINE);
                 continue;
             }
 
             // Set receivedTime (Ignore input value from JSON)
-            event.setReceivedTime(Instant.now());
+            event.setReceivedTime(now);
+
+            // Fingerprint the payload so future duplicates compare by hash only
+            event.setPayloadHash(PayloadHasher.hash(event));
 
-            MachineEvent existing = existingMap.get(event.getEventId());
+            // Compare against an earlier copy in this batch first, then the stored row
+            MachineEvent earlier = pending.get(event.getEventId());
+            EventFingerprint stored = (earlier == null) ? existing.get(event.getEventId()) : null;
 
-            if (existing == null) {
+            if (earlier == null && stored == null) {
                 // New record
-                toSave.add(event);
+                pending.put(event.getEventId(), event);
                 summary.incrementAccepted();
-            } else if (isIdentical(existing, event)) {
+                metrics.outcome(IngestMetrics.Outcome.ACCEPTED);
+            } else if (isIdentical(earlier != null ? earlier.getPayloadHash() : stored.payloadHash(), event)) {
                 // Identical ID + Payload -> Ignore
-                System.out.println("HIII");
                 summary.incrementDeduped();
+                metrics.outcome(IngestMetrics.Outcome.DEDUPED);
             } else {
                 // Same ID + Different Payload -> Update
-                toSave.add(event);
+                pending.put(event.getEventId(), event);
                 summary.incrementUpdated();
+                metrics.outcome(IngestMetrics.Outcome.UPDATED);
             }
         }
+        metrics.record(IngestMetrics.Stage.VALIDATION, validationNanos);
+        metrics.record(IngestMetrics.Stage.ENRICH, enrichNanos);
+    }
 
-        // Batch save the list in one go
-        repository.saveAll(toSave);
-        return summary;
+    /**
+     * processBatch against the shards: validation and enrichment as usual, then
+     * each shard dedupes and writes its own events in parallel. The outcomes
+     * are counted here, on the calling thread, because summaries may be shared.
+     * In durable mode every valid event is logged before any shard writes.
+     */
+    private void processSharded(List<MachineEvent> events, List<BatchResponse> summaries, EventShards shards,
+                                Instant now, Instant futureLimit, long batchStart) {
+        List<List<MachineEvent>> perShard = new ArrayList<>(shards.size());
+        List<List<BatchResponse>> perShardSummaries = new ArrayList<>(shards.size());
+        for (int s = 0; s < shards.size(); s++) {
+            perShard.add(new ArrayList<>());
+            perShardSummaries.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < events.size(); i++) {
+            MachineEvent event = events.get(i);
+            BatchResponse summary = summaries.get(i);
+
+            RejectionReason rejection = validate(event, futureLimit);
+            if (rejection == null && !enrichEventData(event)) {
+                rejection = RejectionReason.UNKNOWN_MACHINE;
+            }
+            if (rejection != null) {
+                summary.addRejection(event.getEventId(), rejection);
+                metrics.rejected(rejection);
+                continue;
+            }
+            event.setReceivedTime(now);
+            event.setPayloadHash(PayloadHasher.hash(event));
+
+            int shard = shards.shardOf(event.getEventId());
+            perShard.get(shard).add(event);
+            perShardSummaries.get(shard).add(summary);
+        }
+        long saveStart = System.nanoTime();
+        metrics.record(IngestMetrics.Stage.VALIDATION, saveStart - batchStart);
+
+        logAhead(perShard);
+        EventShards.ShardWrite[] writes;
+        try {
+            writes = shards.write(perShard);
+        } catch (EventShards.PartialWriteException e) {
+            // The committed shards keep their rows and a resend reports them as deduped,
+            // so they are recorded now; this transaction rolls back and never reaches afterCommit
+            recordCommittedShards(e.committed());
+            throw (e.getCause() instanceof RuntimeException cause) ? cause : e;
+        }
+
+        List<MachineEvent> saved = new ArrayList<>();
+        List<StoredEventKey> previous = new ArrayList<>();
+        for (int s = 0; s < writes.length; s++) {
+            byte[] outcomes = writes[s].outcomes();
+            List<BatchResponse> shardSummaries = perShardSummaries.get(s);
+            for (int i = 0; i < outcomes.length; i++) {
+                BatchResponse summary = shardSummaries.get(i);
+                switch (outcomes[i]) {
+                    case EventShards.ACCEPTED -> {
+                        summary.incrementAccepted();
+                        metrics.outcome(IngestMetrics.Outcome.ACCEPTED);
+                    }
+                    case EventShards.UPDATED -> {
+                        summary.incrementUpdated();
+                        metrics.outcome(IngestMetrics.Outcome.UPDATED);
+                    }
+                    default -> {
+                        summary.incrementDeduped();
+                        metrics.outcome(IngestMetrics.Outcome.DEDUPED);
+                    }
+                }
+            }
+            saved.addAll(writes[s].saved());
+            previous.addAll(writes[s].previous());
+        }
+        heavyHitters.recordAfterCommit(saved, previous);
+        hotStore.recordAfterCommit(saved);
+        statusMonitor.recordAfterCommit(saved, previous);
+
+        long batchEnd = System.nanoTime();
+        metrics.record(IngestMetrics.Stage.SAVE, batchEnd - saveStart);
+        metrics.record(IngestMetrics.Stage.PROCESS_BATCH, batchEnd - batchStart);
     }
 
-    private boolean isIdentical(MachineEvent existing, MachineEvent incoming) {
-        return existing.getMachineId().equals(incoming.getMachineId()) &&
-                existing.getDurationMs() == incoming.getDurationMs() &&
-                existing.getDefectCount() == incoming.getDefectCount() &&
-                existing.getEventTime().equals(incoming.getEventTime());
+    private void recordCommittedShards(EventShards.ShardWrite[] writes) {
+        List<MachineEvent> saved = new ArrayList<>();
+        List<StoredEventKey> previous = new ArrayList<>();
+        for (EventShards.ShardWrite write : writes) {
+            if (write != null) {
+                saved.addAll(write.saved());
+                previous.addAll(write.previous());
+            }
+        }
+        if (saved.isEmpty()) {
+            return;
+        }
+        heavyHitters.record(saved, previous);
+        if (hotStore.isEnabled()) {
+            hotStore.record(saved);
+        }
+        if (statusMonitor.isEnabled()) {
+            statusMonitor.record(saved, previous);
+        }
     }
 
-    private void enrichEventData(MachineEvent event) {
-        // Simple logic: Machines M-001 to M-010 belong to Line 1
-        // You can customize this mapping logic
-        String mid = event.getMachineId();
-        event.setFactoryId("F01"); // Assuming a single factory for now
+    /**
+     * Re-applies a batch read back from the event log at startup. The events
+     * were validated and enriched when first written, so they go straight to
+     * persist(); versions already in the table are treated as updates.
+     */
+    @Transactional
+    public void applyReplayed(List<MachineEvent> events) {
+        EventShards shards = eventShards.getIfAvailable();
+        if (shards != null) {
+            List<List<MachineEvent>> perShard = new ArrayList<>(shards.size());
+            for (int s = 0; s < shards.size(); s++) {
+                perShard.add(new ArrayList<>());
+            }
+            events.forEach(e -> perShard.get(shards.shardOf(e.getEventId())).add(e));
+            for (EventShards.ShardWrite write : shards.write(perShard)) {
+                heavyHitters.recordAfterCommit(write.saved(), write.previous());
+                hotStore.recordAfterCommit(write.saved());
+                statusMonitor.recordAfterCommit(write.saved(), write.previous());
+            }
+            return;
+        }
 
-        if (mid.compareTo("M-010") <= 0) {
-            event.setLineId("LINE-01");
-        } else {
-            event.setLineId("LINE-02");
+        List<String> ids = new ArrayList<>(events.size());
+        for (MachineEvent event : events) {
+            ids.add(event.getEventId());
+        }
+        Set<String> existingIds = new HashSet<>();
+        for (EventFingerprint fingerprint : repository.findFingerprints(ids)) {
+            existingIds.add(fingerprint.eventId());
+        }
+        persist(events, existingIds);
+    }
+
+    /**
+     * Durable mode with shards: the valid events are logged and the record
+     * committed before any shard writes, since shards commit on their own and
+     * cannot be rolled back with the log. A failed log write thus leaves
+     * nothing written. If a shard write fails afterwards the record stays;
+     * replaying it upserts the same latest versions a resend would, and the
+     * shards dedupe whatever they already hold.
+     */
+    private void logAhead(List<List<MachineEvent>> perShard) {
+        EventLog log = eventLog.getIfAvailable();
+        if (log == null) {
+            return;
+        }
+        List<MachineEvent> events = new ArrayList<>();
+        perShard.forEach(events::addAll);
+        if (events.isEmpty()) {
+            return;
+        }
+        log.commit(log.append(events).join());
+    }
+
+    /**
+     * Durable mode: the batch is acknowledged only once its log record is
+     * fsynced. The record is written ahead of the commit, so if the transaction
+     * rolls back afterwards, an abort marker voids it for replay.
+     */
+    private void logUntilCompletion(List<MachineEvent> saved) {
+        EventLog log = eventLog.getIfAvailable();
+        if (log == null) {
+            return;
+        }
+        long recordId = log.append(saved).join();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            log.commit(recordId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    log.commit(recordId);
+                } else {
+                    log.abort(recordId).join();
+                }
+            }
+        });
+    }
+
+    // Writes toSave (unique eventIds) and keeps rollups, heavy hitters and the hot store in step
+    private void persist(List<MachineEvent> toSave, Set<String> existingIds) {
+        List<String> updatedIds = new ArrayList<>();
+        for (int i = 0; i < toSave.size(); i++) {
+            MachineEvent event = toSave.get(i);
+            if (existingIds.contains(event.getEventId())) {
+                updatedIds.add(event.getEventId());
+            }
         }
+
+        // Rollup, heavy-hitter and status deltas need the old payload of updated rows, so read them before writing
+        List<StoredEventKey> previous = updatedIds.isEmpty() ? List.of() : repository.findStoredKeys(updatedIds);
+        if (rollupsEnabled) {
+            rollupService.applyBatch(toSave, previous);
+        }
+
+        // Batch save the list in one go, into the day table of each event
+        batchWriter.upsertAll(toSave, previous);
+        heavyHitters.recordAfterCommit(toSave, previous);
+        hotStore.recordAfterCommit(toSave);
+        statusMonitor.recordAfterCommit(toSave, previous);
+    }
+
+    // Returns the rejection reason, or null if the event is valid
+    public RejectionReason validate(MachineEvent event) {
+        return validate(event, Instant.now().plus(15, ChronoUnit.MINUTES));
+    }
+
+    /**
+     * Same as validate(event), against a future-time limit computed once by the
+     * caller so the per-event check does not read the clock or allocate.
+     */
+    public RejectionReason validate(MachineEvent event, Instant futureLimit) {
+        // Duration must be within 0..6 hours
+        if (event.getDurationMs() < 0 || event.getDurationMs() > 21600000) {
+            return RejectionReason.INVALID_DURATION;
+        }
+
+        // Future Time (15 min limit)
+        if (event.getEventTime().isAfter(futureLimit)) {
+            return RejectionReason.FUTURE_EVENT_TIME;
+        }
+        return null;
+    }
+
+    // Public so EnrichmentBenchmark measures this exact comparison
+    public static boolean isIdentical(long existingHash, MachineEvent incoming) {
+        // machineId, durationMs, defectCount and eventTime are all covered by the hash
+        return existingHash == incoming.getPayloadHash();
+    }
+
+    // Returns false if the machine is unknown and the topology policy rejects it
+    private boolean enrichEventData(MachineEvent event) {
+        TopologyRegistry.Placement placement = topologyRegistry.lookup(event.getMachineId());
+        if (placement == null) {
+            return false;
+        }
+
+        event.setLineId(placement.lineId());
+        event.setFactoryId(placement.factoryId());
+        return true;
     }
 
     public List<TopDefectLineResponse> getTopDefectLines(String factoryId, Instant from, Instant to, int limit) {
-        List<Object[]> results = repository.findTopDefectLines(factoryId, from, to);
+        return getTopDefectLines(factoryId, from, to, limit, DefectRanking.TOTAL_DEFECTS);
+    }
+
+    public List<TopDefectLineResponse> getTopDefectLines(String factoryId, Instant from, Instant to, int limit,
+                                                         DefectRanking ranking) {
+        long queryStart = System.nanoTime();
+
+        // Ordering and limit [cite: 95] are applied by the query itself
+        // Recent windows come from the in-memory columns (null when not covered)
+        List<Object[]> results = hotStore.lineTotals(factoryId, from, to, ranking, limit);
+        EventShards shards = eventShards.getIfAvailable();
+        if (results == null) {
+            if (shards != null) {
+                results = shards.lineTotals(factoryId, from, to, ranking, limit);
+            } else if (rollupsEnabled) {
+                results = rollupService.lineTotals(factoryId, from, to, ranking, limit);
+            } else if (ranking == DefectRanking.DEFECTS_PERCENT) {
+                results = repository.findTopDefectLinesByPercent(factoryId, from, to, Limit.of(limit));
+            } else {
+                results = repository.findTopDefectLines(factoryId, from, to, Limit.of(limit));
+            }
+        }
+        metrics.record(IngestMetrics.Stage.TOP_LINES_QUERY, System.nanoTime() - queryStart);
 
         return results.stream()
-                .limit(limit) // Respect the limit parameter [cite: 95]
                 .map(row -> {
                     String lineId = (String) row[0];
                     long totalDefects = (row[1] != null) ? (long) row[1] : 0;
@@ -125,18 +499,145 @@ public class EventService {
                 .collect(Collectors.toList());
     }
 
+    // Approximate top-K machines by defects from the on-ingest Space-Saving sketches
+    public List<TopDefectMachineResponse> getTopDefectMachines(String factoryId, Instant from, Instant to, int limit) {
+        return heavyHitters.top(factoryId, from, to, limit);
+    }
+
+    /**
+     * Defect time series for one machine, line or factory. Buckets start at
+     * whole multiples of the interval (epoch-aligned) and cover [from, to);
+     * empty buckets are included with zero counts. The cost is one grouped
+     * scan (rollups + edge minutes when enabled), bounded by the bucket count.
+     */
+    public List<SeriesPoint> getDefectSeries(SeriesRepository.Scope scope, String id, Instant from, Instant to,
+                                             long intervalSeconds) {
+        if (intervalSeconds <= 0 || intervalSeconds % 60 != 0) {
+            throw new InvalidRequestException("interval must be a whole number of minutes");
+        }
+        if (!from.isBefore(to)) {
+            return List.of();
+        }
+
+        long baseSecond = Math.floorDiv(from.getEpochSecond(), intervalSeconds) * intervalSeconds;
+        Instant base = Instant.ofEpochSecond(baseSecond);
+        long bucketCount = (to.getEpochSecond() - baseSecond + intervalSeconds - 1) / intervalSeconds;
+        if (to.getNano() > 0 && (to.getEpochSecond() - baseSecond) % intervalSeconds == 0) {
+            bucketCount++; // `to` lies just past a boundary
+        }
+        if (bucketCount > maxSeriesBuckets) {
+            throw new InvalidRequestException("Series would have " + bucketCount
+                    + " buckets, limit is " + maxSeriesBuckets);
+        }
+
+        long[] events = new long[(int) bucketCount];
+        long[] defects = new long[(int) bucketCount];
+        SeriesRepository.BucketConsumer sink = (idx, count, defectSum) -> {
+            if (idx >= 0 && idx < events.length) {
+                events[(int) idx] += count;
+                defects[(int) idx] += defectSum;
+            }
+        };
+
+        long queryStart = System.nanoTime();
+        EventShards shards = eventShards.getIfAvailable();
+        if (shards != null) {
+            shards.series(scope, id, base, intervalSeconds, from, to, sink);
+        } else if (rollupsEnabled) {
+            rollupService.series(scope, id, base, intervalSeconds, from, to, sink);
+        } else {
+            seriesRepository.rawSeries(scope, id, base, intervalSeconds, from, to, sink);
+        }
+        metrics.record(IngestMetrics.Stage.STATS_QUERY, System.nanoTime() - queryStart);
+
+        double intervalHours = intervalSeconds / 3600.0;
+        List<SeriesPoint> points = new ArrayList<>(events.length);
+        for (int i = 0; i < events.length; i++) {
+            points.add(SeriesPoint.builder()
+                    .bucketStart(base.plusSeconds(i * intervalSeconds).toString())
+                    .eventsCount(events[i])
+                    .defectsCount(defects[i])
+                    .avgDefectRate(Math.round(defects[i] / intervalHours * 100.0) / 100.0) // Round to 2 decimals
+                    .build());
+        }
+        return points;
+    }
+
     public StatsResponse getMachineStats(String machineId, Instant start, Instant end) {
-        List<Object[]> results = repository.getStatsData(machineId, start, end);
         long eventsCount = 0;
         long defectsCount = 0;
+        long queryStart = System.nanoTime();
 
-        if (results != null && !results.isEmpty()) {
-            Object[] row = results.getFirst();
-            // Safely convert to Long using Number
-            eventsCount = (row[0] != null) ? ((Number) row[0]).longValue() : 0;
-            defectsCount = (row[1] != null) ? ((Number) row[1]).longValue() : 0;
+        long[] hot = hotStore.machineTotals(machineId, start, end);
+        EventShards shards = eventShards.getIfAvailable();
+        if (hot != null) {
+            eventsCount = hot[0];
+            defectsCount = hot[1];
+        } else if (shards != null) {
+            long[] totals = shards.machineTotals(machineId, start, end);
+            eventsCount = totals[0];
+            defectsCount = totals[1];
+        } else if (rollupsEnabled) {
+            long[] totals = rollupService.machineTotals(machineId, start, end);
+            eventsCount = totals[0];
+            defectsCount = totals[1];
+        } else {
+            List<Object[]> results = repository.getStatsData(machineId, start, end);
+            if (results != null && !results.isEmpty()) {
+                Object[] row = results.getFirst();
+                // Safely convert to Long using Number
+                eventsCount = (row[0] != null) ? ((Number) row[0]).longValue() : 0;
+                defectsCount = (row[1] != null) ? ((Number) row[1]).longValue() : 0;
+            }
         }
+        metrics.record(IngestMetrics.Stage.STATS_QUERY, System.nanoTime() - queryStart);
+        return toStats(machineId, start, end, eventsCount, defectsCount);
+    }
+
+    /**
+     * Stats for many machines over one window: either the listed machineIds or
+     * every machine on lineId. All machines are computed by one grouped query
+     * (plus the edge scans when rollups are on) instead of one query each; the
+     * per-machine responses are then produced one at a time as the stream is consumed.
+     */
+    public Stream<StatsResponse> getBulkMachineStats(List<String> machineIds, String lineId, Instant start, Instant end) {
+        long queryStart = System.nanoTime();
+        Map<String, long[]> totals;
+        EventShards shards = eventShards.getIfAvailable();
+
+        if (shards != null) {
+            totals = new HashMap<>();
+            RollupService.mergeMachines(totals, (machineIds != null)
+                    ? shards.totalsByMachines(machineIds, start, end)
+                    : shards.totalsByLine(lineId, start, end));
+        } else if (rollupsEnabled) {
+            totals = (machineIds != null)
+                    ? rollupService.machineTotals(machineIds, start, end)
+                    : rollupService.lineMachineTotals(lineId, start, end);
+        } else {
+            totals = new HashMap<>();
+            RollupService.mergeMachines(totals, (machineIds != null)
+                    ? repository.getStatsDataByMachines(machineIds, start, end)
+                    : repository.getStatsDataByLine(lineId, start, end));
+        }
+
+        metrics.record(IngestMetrics.Stage.STATS_QUERY, System.nanoTime() - queryStart);
+
+        // Explicitly requested machines are reported even when they have no events.
+        // Responses are built lazily so the caller can write each one as it is produced.
+        List<String> reported = (machineIds != null) ? machineIds : new ArrayList<>(totals.keySet());
+        return reported.stream().map(machineId -> {
+            long[] t = totals.getOrDefault(machineId, new long[2]);
+            return toStats(machineId, start, end, t[0], t[1]);
+        });
+    }
+
+    // Shared by /events/stats and the pushed machine status
+    static String status(double avgDefectRate) {
+        return (avgDefectRate < 2.0) ? "Healthy" : "Warning";
+    }
 
+    private StatsResponse toStats(String machineId, Instant start, Instant end, long eventsCount, long defectsCount) {
         // Calculate window hours
         double windowHours = Duration.between(start, end).toSeconds() / 3600.0;
 
@@ -144,7 +645,7 @@ public class EventService {
         double avgDefectRate = (windowHours > 0) ? (defectsCount / windowHours) : 0.0;
 
         // Determine status
-        String status = (avgDefectRate < 2.0) ? "Healthy" : "Warning";
+        String status = status(avgDefectRate);
 
         return StatsResponse.builder()
                 .machineId(machineId)
@@ -0,0 +1,54 @@
+package com.AyushToCode.Buyogo.service;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.utility.BatchResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.MappingIterator;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ingests newline-delimited JSON without binding the whole payload.
+ * Events are read one at a time from the stream and handed to
+ * EventService.processBatch in fixed-size chunks, each in its own transaction,
+ * so heap use is bounded by the chunk size rather than the request size.
+ */
+@Service
+@RequiredArgsConstructor
+public class EventStreamIngestor {
+
+    private final EventService eventService;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${buyogo.ingest.stream.chunk-size:1000}")
+    private int chunkSize;
+
+    public BatchResponse ingest(InputStream body) throws IOException {
+        BatchResponse total = new BatchResponse();
+        List<MachineEvent> chunk = new ArrayList<>(chunkSize);
+
+        try (MappingIterator<MachineEvent> it = objectMapper.readerFor(MachineEvent.class).readValues(body)) {
+            while (it.hasNextValue()) {
+                chunk.add(it.nextValue());
+
+                if (chunk.size() == chunkSize) {
+                    // Each call commits separately through the transactional proxy
+                    total.merge(eventService.processBatch(chunk));
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            total.merge(eventService.processBatch(chunk));
+        }
+        return total;
+    }
+}
@@ -0,0 +1,477 @@
+package com.AyushToCode.Buyogo.service;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.repo.EventShards;
+import com.AyushToCode.Buyogo.utility.DefectRanking;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Column-oriented copy of recent events, kept in step with machine_events on
+ * ingest. Each event is one row across primitive arrays: machine, line and
+ * factory as dictionary codes, event time as epoch micros (the column precision), and duration and
+ * defects as ints. Stats for windows inside the covered range are answered by
+ * a single pass over those arrays, without touching the database or entities.
+ *
+ * Rows are keyed by eventId so corrections overwrite their row in place. The
+ * store covers [coveredFrom, now): it is loaded from the database (or from
+ * every shard when sharding is on) at startup, and rows older than the window
+ * are dropped when the arrays fill up.
+ */
+@Service
+@RequiredArgsConstructor
+public class HotEventStore {
+
+    private static final String WARM_UP_SQL =
+            "SELECT event_id, machine_id, line_id, factory_id, event_time, duration_ms, defect_count " +
+            "FROM machine_events WHERE event_time >= ?";
+
+    private static final int INITIAL_ROWS = 1 << 16;
+
+    // Resolution of the event-time histogram used to pick what to evict
+    private static final int EVICTION_BUCKETS = 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ObjectProvider<EventShards> eventShards;
+
+    @Value("${buyogo.hot-store.enabled:false}")
+    private boolean enabled;
+
+    // How far back from now the store keeps events
+    @Value("${buyogo.hot-store.window-hours:24}")
+    private int windowHours;
+
+    // Upper bound on stored rows; when full, the oldest rows are evicted
+    @Value("${buyogo.hot-store.max-rows:2000000}")
+    private int maxRows;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Dictionary machineCodes = new Dictionary();
+    private final Dictionary lineCodes = new Dictionary();
+    private final Dictionary factoryCodes = new Dictionary();
+    private final SlotIndex slotsById = new SlotIndex();
+
+    private String[] eventIds = new String[0];
+    private int[] machines = new int[0];
+    private int[] lines = new int[0];
+    private int[] factories = new int[0];
+    private long[] eventTimes = new long[0];
+    private int[] durations = new int[0];
+    // Defect count with -1 (unknown) stored as 0, so sums need no branch
+    private int[] defects = new int[0];
+    private int size;
+
+    // Windows starting before this are not answered; nothing is covered until warm-up
+    private volatile long coveredFromMicros = Long.MAX_VALUE;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Loads the current window from the database; ingest waits on the write lock meanwhile
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        long from = micros(Instant.now()) - windowHours * 3_600_000_000L;
+
+        Instant fromInstant = Instant.ofEpochSecond(0, from * 1000);
+        EventShards shards = eventShards.getIfAvailable();
+
+        lock.writeLock().lock();
+        try {
+            coveredFromMicros = from;
+            if (shards != null) {
+                shards.forEachEventSince(fromInstant, event -> upsert(event.getEventId(), event.getMachineId(),
+                        event.getLineId(), event.getFactoryId(), micros(event.getEventTime()),
+                        event.getDurationMs(), event.getDefectCount()));
+            } else {
+                jdbcTemplate.query(WARM_UP_SQL, rs -> {
+                    upsert(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                            micros(rs.getTimestamp(5).toInstant()), rs.getInt(6), rs.getInt(7));
+                }, Timestamp.from(fromInstant));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the written events once the surrounding transaction commits, so
+     * the store never shows rows that were rolled back.
+     */
+    public void recordAfterCommit(List<MachineEvent> saved) {
+        if (!enabled || saved.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            record(saved);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record(saved);
+            }
+        });
+    }
+
+    public void record(List<MachineEvent> saved) {
+        lock.writeLock().lock();
+        try {
+            for (MachineEvent event : saved) {
+                upsert(event.getEventId(), event.getMachineId(), event.getLineId(), event.getFactoryId(),
+                        micros(event.getEventTime()), event.getDurationMs(), event.getDefectCount());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Drops all rows; the covered range is unchanged (used when the table itself is cleared)
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            slotsById.clear();
+            Arrays.fill(eventIds, 0, size, null);
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops rows with an event time before cutoff, after retention deleted them
+     * from the table. The covered range is unchanged: the table holds nothing
+     * there either, so answers from the store still match it.
+     */
+    public void expireBefore(Instant cutoff) {
+        lock.writeLock().lock();
+        try {
+            removeBefore(micros(cutoff));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {eventsCount, defectsCount} for machineId in [start, end), or null when
+     * the window is not fully covered and the caller must ask the database.
+     */
+    public long[] machineTotals(String machineId, Instant start, Instant end) {
+        if (!covers(start)) {
+            return null;
+        }
+        long s = micros(start);
+        long e = micros(end);
+
+        lock.readLock().lock();
+        try {
+            int code = machineCodes.find(machineId);
+            long count = 0;
+            long defectSum = 0;
+            if (code >= 0) {
+                int[] m = machines;
+                long[] t = eventTimes;
+                int[] d = defects;
+                for (int i = 0; i < size; i++) {
+                    long time = t[i];
+                    if (m[i] == code & time >= s & time < e) {
+                        count++;
+                        defectSum += d[i];
+                    }
+                }
+            }
+            return new long[]{count, defectSum};
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Top `limit` rows of {lineId, totalDefects, eventCount} for factoryId in
+     * [from, to), in the same shape as MachineRepository.findTopDefectLines,
+     * or null when the window is not fully covered.
+     */
+    public List<Object[]> lineTotals(String factoryId, Instant from, Instant to, DefectRanking ranking, int limit) {
+        if (!covers(from)) {
+            return null;
+        }
+        long s = micros(from);
+        long e = micros(to);
+
+        long[] counts;
+        long[] defectSums;
+        lock.readLock().lock();
+        try {
+            int code = factoryCodes.find(factoryId);
+            if (code < 0) {
+                return List.of();
+            }
+            counts = new long[lineCodes.size()];
+            defectSums = new long[counts.length];
+            int[] f = factories;
+            int[] l = lines;
+            long[] t = eventTimes;
+            int[] d = defects;
+            for (int i = 0; i < size; i++) {
+                long time = t[i];
+                if (f[i] == code & time >= s & time < e) {
+                    counts[l[i]]++;
+                    defectSums[l[i]] += d[i];
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Object[]> rows = new ArrayList<>();
+        for (int line = 0; line < counts.length; line++) {
+            if (counts[line] > 0) {
+                rows.add(new Object[]{lineCodes.value(line), defectSums[line], counts[line]});
+            }
+        }
+        Comparator<Object[]> order = (ranking == DefectRanking.DEFECTS_PERCENT)
+                ? Comparator.comparingDouble(row -> (long) row[1] * 100.0 / (long) row[2])
+                : Comparator.comparingLong(row -> (long) row[1]);
+        rows.sort(order.reversed());
+        return rows.size() > limit ? rows.subList(0, limit) : rows;
+    }
+
+    private boolean covers(Instant start) {
+        return enabled && micros(start) >= coveredFromMicros;
+    }
+
+    private static long micros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1000;
+    }
+
+    private boolean outsideRange(long eventTime) {
+        return coveredFromMicros != Long.MAX_VALUE && eventTime < coveredFromMicros;
+    }
+
+    // Caller holds the write lock
+    private void upsert(String eventId, String machineId, String lineId, String factoryId,
+                        long eventTime, int durationMs, int defectCount) {
+        int slot = slotsById.get(eventId);
+        if (slot < 0) {
+            if (outsideRange(eventTime)) {
+                return; // older than the covered range, only the database keeps it
+            }
+            if (size == eventIds.length) {
+                makeRoom();
+                if (outsideRange(eventTime)) {
+                    return; // the range moved forward past this event while making room
+                }
+            }
+            slot = size++;
+            eventIds[slot] = eventId;
+            slotsById.put(eventId, slot);
+        }
+
+        machines[slot] = machineCodes.code(machineId);
+        lines[slot] = lineCodes.code(lineId);
+        factories[slot] = factoryCodes.code(factoryId);
+        eventTimes[slot] = eventTime;
+        durations[slot] = durationMs;
+        defects[slot] = defectCount != -1 ? defectCount : 0;
+    }
+
+    // Grows the arrays up to maxRows, then evicts rows outside the window (or at least the oldest quarter)
+    private void makeRoom() {
+        if (eventIds.length < maxRows) {
+            resize(Math.min(maxRows, Math.max(INITIAL_ROWS, eventIds.length * 2)));
+            return;
+        }
+
+        long cutoff = Math.max(micros(Instant.now()) - windowHours * 3_600_000_000L, quarterCutoff());
+        removeBefore(cutoff);
+        coveredFromMicros = Math.max(coveredFromMicros, cutoff);
+    }
+
+    // Removes rows older than cutoff and packs the rest to the front of the arrays
+    private void removeBefore(long cutoff) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (eventTimes[i] < cutoff) {
+                continue;
+            }
+            if (kept != i) {
+                eventIds[kept] = eventIds[i];
+                machines[kept] = machines[i];
+                lines[kept] = lines[i];
+                factories[kept] = factories[i];
+                eventTimes[kept] = eventTimes[i];
+                durations[kept] = durations[i];
+                defects[kept] = defects[i];
+            }
+            kept++;
+        }
+        Arrays.fill(eventIds, kept, size, null);
+        size = kept;
+        slotsById.rebuild(eventIds, size);
+    }
+
+    /**
+     * An event time such that at least a quarter of the rows (and at least one)
+     * are older. Found with a histogram of the time range instead of a sort,
+     * so it costs two passes. Every row in the bucket that reaches the quarter
+     * is below the result, so rows sharing one timestamp are evicted together
+     * and the covered range stays exact.
+     */
+    private long quarterCutoff() {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            min = Math.min(min, eventTimes[i]);
+            max = Math.max(max, eventTimes[i]);
+        }
+
+        int[] histogram = new int[EVICTION_BUCKETS];
+        long width = (max - min) / EVICTION_BUCKETS + 1;
+        for (int i = 0; i < size; i++) {
+            histogram[(int) ((eventTimes[i] - min) / width)]++;
+        }
+
+        int target = Math.max(1, size / 4);
+        int seen = 0;
+        int bucket = 0;
+        while ((seen += histogram[bucket]) < target) {
+            bucket++;
+        }
+        return min + (bucket + 1) * width;
+    }
+
+    private void resize(int rows) {
+        eventIds = Arrays.copyOf(eventIds, rows);
+        machines = Arrays.copyOf(machines, rows);
+        lines = Arrays.copyOf(lines, rows);
+        factories = Arrays.copyOf(factories, rows);
+        eventTimes = Arrays.copyOf(eventTimes, rows);
+        durations = Arrays.copyOf(durations, rows);
+        defects = Arrays.copyOf(defects, rows);
+    }
+
+    /**
+     * eventId -> row slot, open-addressed with linear probing over parallel
+     * arrays so lookups neither box the slot nor allocate entries. Keys are
+     * never removed one by one: compaction moves most rows anyway, so the
+     * index is rebuilt from the packed eventIds afterwards.
+     */
+    private static final class SlotIndex {
+        private String[] keys = new String[16];
+        private int[] slots = new int[16];
+        private int count;
+
+        // The slot of eventId, or -1
+        int get(String eventId) {
+            int mask = keys.length - 1;
+            for (int i = hash(eventId) & mask; ; i = (i + 1) & mask) {
+                String key = keys[i];
+                if (key == null) {
+                    return -1;
+                }
+                if (key.equals(eventId)) {
+                    return slots[i];
+                }
+            }
+        }
+
+        void put(String eventId, int slot) {
+            // Kept at most half full so probe runs stay short
+            if ((count + 1) * 2 > keys.length) {
+                String[] oldKeys = keys;
+                int[] oldSlots = slots;
+                keys = new String[oldKeys.length * 2];
+                slots = new int[oldKeys.length * 2];
+                count = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != null) {
+                        insert(oldKeys[i], oldSlots[i]);
+                    }
+                }
+            }
+            insert(eventId, slot);
+        }
+
+        void clear() {
+            Arrays.fill(keys, null);
+            count = 0;
+        }
+
+        void rebuild(String[] eventIds, int size) {
+            clear();
+            for (int i = 0; i < size; i++) {
+                put(eventIds[i], i);
+            }
+        }
+
+        private void insert(String eventId, int slot) {
+            int mask = keys.length - 1;
+            int i = hash(eventId) & mask;
+            while (keys[i] != null && !keys[i].equals(eventId)) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == null) {
+                keys[i] = eventId;
+                count++;
+            }
+            slots[i] = slot;
+        }
+
+        // Spreads String.hashCode so similar IDs do not cluster under linear probing
+        private static int hash(String eventId) {
+            int h = eventId.hashCode() * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // String <-> dense int code; codes are never reused
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int code(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        int find(String value) {
+            Integer code = codes.get(value);
+            return (code != null) ? code : -1;
+        }
+
+        String value(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
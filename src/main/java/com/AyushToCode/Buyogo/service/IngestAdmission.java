@@ -0,0 +1,202 @@
+package com.AyushToCode.Buyogo.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a POST /events/batch gets to run, so one oversized payload or
+ * a reconnect storm is answered with a fast 413/429/503 instead of taking heap
+ * and pool connections away from every other client.
+ *
+ * Checks happen in three places: IngestAdmissionInterceptor rejects on declared
+ * body size, empty client bucket and in-flight work before the body is read,
+ * AdmissionBodyLimitFilter counts the bytes actually read, and the controller
+ * calls admit() once the batch is parsed. admit() checks and charges the bucket
+ * in one step, so concurrent batches of a client can put its bucket into debt
+ * by one batch at most; a client is never asked to split a batch that fits
+ * maxEvents.
+ *
+ * Buckets are keyed by the authenticated caller, else by clientHeader when the
+ * request comes from a trusted proxy, else by the remote address, and at most
+ * maxClients of them are kept, least recently used first out.
+ */
+@Service
+public class IngestAdmission {
+
+    // Request attribute carrying the bucket key from the interceptor to the controller
+    public static final String CLIENT_ATTRIBUTE = IngestAdmission.class.getName() + ".client";
+
+    @Value("${buyogo.admission.enabled:false}")
+    private boolean enabled;
+
+    @Value("${buyogo.admission.max-events:50000}")
+    private int maxEvents;
+
+    @Value("${buyogo.admission.max-bytes:16777216}")
+    private long maxBytes;
+
+    // 0 = number of CPU cores
+    @Value("${buyogo.admission.max-concurrent:0}")
+    private int maxConcurrent;
+
+    @Value("${buyogo.admission.acquire-timeout-ms:50}")
+    private long acquireTimeoutMs;
+
+    @Value("${buyogo.admission.client-header:X-Client-Id}")
+    private String clientHeader;
+
+    // Remote addresses whose clientHeader is believed; from anyone else it is ignored
+    @Value("${buyogo.admission.trusted-proxies:}")
+    private Set<String> trustedProxies;
+
+    // Buckets kept; the least recently used one is dropped beyond this
+    @Value("${buyogo.admission.max-clients:10000}")
+    private int maxClients;
+
+    @Value("${buyogo.admission.client-rate:50000}")
+    private double clientRate;
+
+    @Value("${buyogo.admission.client-burst:100000}")
+    private double clientBurst;
+
+    // Access-ordered, guarded by itself
+    private Map<String, TokenBucket> buckets;
+
+    private Semaphore permits;
+
+    /** Why a request was turned away; retryAfterSeconds is 0 when retrying the same request is pointless. */
+    public record Rejection(HttpStatus status, long retryAfterSeconds) {
+    }
+
+    @PostConstruct
+    void init() {
+        permits = new Semaphore(maxConcurrent > 0 ? maxConcurrent : Runtime.getRuntime().availableProcessors(), true);
+        buckets = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return size() > maxClients;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Also bounds what a binary batch may declare, whether or not admission is enabled
+    public int getMaxEvents() {
+        return maxEvents;
+    }
+
+    public String getClientHeader() {
+        return clientHeader;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Bucket key for a request: "user:" plus the authenticated principal name,
+     * else "client:" plus the client header when remoteAddr is a trusted proxy,
+     * else remoteAddr itself. Anyone else sending the header gets no fresh
+     * bucket by changing it.
+     */
+    public String clientKey(String principal, String remoteAddr, String headerValue) {
+        if (principal != null) {
+            return "user:" + principal;
+        }
+        if (headerValue != null && !headerValue.isBlank() && trustedProxies.contains(remoteAddr)) {
+            return "client:" + headerValue;
+        }
+        return remoteAddr;
+    }
+
+    // A declared length over maxBytes; bodies without one are counted as they are read
+    public Rejection checkBytes(long contentLength) {
+        return (contentLength > maxBytes) ? new Rejection(HttpStatus.CONTENT_TOO_LARGE, 0) : null;
+    }
+
+    // 429 while the client's bucket is in debt, without charging it; admit() has the final say
+    public Rejection checkClient(String client) {
+        long now = System.nanoTime();
+        return throttled(bucket(client, now).waitNanos(clientRate, clientBurst, now));
+    }
+
+    /**
+     * Final check once the batch is parsed: 413 over maxEvents, 429 while the
+     * client's bucket is in debt, otherwise charges `events` to it. The check
+     * and the charge are one step, so once a batch overdraws the bucket every
+     * concurrent batch of that client is refused.
+     */
+    public Rejection admit(String client, int events) {
+        if (events > maxEvents) {
+            return new Rejection(HttpStatus.CONTENT_TOO_LARGE, 0);
+        }
+        if (client == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        return throttled(bucket(client, now).tryCharge(events, clientRate, clientBurst, now));
+    }
+
+    // Bounds in-flight processBatch work; waits at most acquireTimeoutMs so overload fails fast
+    public boolean tryAcquire() throws InterruptedException {
+        return permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    private static Rejection throttled(long waitNanos) {
+        if (waitNanos == 0) {
+            return null;
+        }
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999); // rounded up
+        return new Rejection(HttpStatus.TOO_MANY_REQUESTS, Math.max(1, seconds));
+    }
+
+    private TokenBucket bucket(String client, long now) {
+        synchronized (buckets) {
+            return buckets.computeIfAbsent(client, k -> new TokenBucket(clientBurst, now));
+        }
+    }
+
+    private static final class TokenBucket {
+        private double tokens;
+        private long refilledAt;
+
+        TokenBucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        synchronized long waitNanos(double rate, double burst, long now) {
+            refill(rate, burst, now);
+            return (tokens > 0) ? 0 : (long) Math.ceil((1 - tokens) / rate * 1e9);
+        }
+
+        // Charges events and returns 0 while tokens are left, otherwise the wait
+        synchronized long tryCharge(int events, double rate, double burst, long now) {
+            long waitNanos = waitNanos(rate, burst, now);
+            if (waitNanos == 0) {
+                tokens -= events;
+            }
+            return waitNanos;
+        }
+
+        private void refill(double rate, double burst, long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * rate / 1e9);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.AyushToCode.Buyogo.service;
+
+import com.AyushToCode.Buyogo.utility.RejectionReason;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stage timings and outcome counters for the ingest and query paths.
+ * Recording only touches pre-allocated atomics (no locks, no allocation);
+ * the Prometheus text is built on scrape.
+ */
+@Service
+public class IngestMetrics {
+
+    public enum Stage {
+        JSON_BIND, VALIDATION, ENRICH, DEDUPE_LOOKUP, SAVE, PROCESS_BATCH, STATS_QUERY, TOP_LINES_QUERY
+    }
+
+    public enum Outcome { ACCEPTED, DEDUPED, UPDATED, REJECTED }
+
+    // Histogram upper bounds in nanoseconds, 10us .. 10s; the last slot is +Inf
+    private static final long[] BOUNDS_NANOS = {
+            10_000L, 50_000L, 100_000L, 500_000L,
+            1_000_000L, 5_000_000L, 10_000_000L, 50_000_000L, 100_000_000L, 500_000_000L,
+            1_000_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    private final Histogram[] stages = new Histogram[Stage.values().length];
+    private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+    private final LongAdder[] rejections = new LongAdder[RejectionReason.values().length];
+
+    public IngestMetrics() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new Histogram();
+        }
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+        for (int i = 0; i < rejections.length; i++) {
+            rejections[i] = new LongAdder();
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    public void outcome(Outcome outcome) {
+        outcomes[outcome.ordinal()].increment();
+    }
+
+    public void rejected(RejectionReason reason) {
+        outcomes[Outcome.REJECTED.ordinal()].increment();
+        rejections[reason.ordinal()].increment();
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format (0.0.4).
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# HELP buyogo_stage_seconds Time spent per ingest/query stage\n");
+        out.append("# TYPE buyogo_stage_seconds histogram\n");
+        for (Stage stage : Stage.values()) {
+            stages[stage.ordinal()].writeTo(out, stage.name().toLowerCase());
+        }
+
+        out.append("# HELP buyogo_events_total Events by ingest outcome\n");
+        out.append("# TYPE buyogo_events_total counter\n");
+        for (Outcome outcome : Outcome.values()) {
+            out.append("buyogo_events_total{outcome=\"").append(outcome.name().toLowerCase()).append("\"} ")
+                    .append(outcomes[outcome.ordinal()].sum()).append('\n');
+        }
+
+        out.append("# HELP buyogo_rejections_total Rejected events by reason\n");
+        out.append("# TYPE buyogo_rejections_total counter\n");
+        for (RejectionReason reason : RejectionReason.values()) {
+            out.append("buyogo_rejections_total{reason=\"").append(reason.name()).append("\"} ")
+                    .append(rejections[reason.ordinal()].sum()).append('\n');
+        }
+
+        return out.toString();
+    }
+
+    private static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_NANOS.length + 1);
+        private final LongAdder sumNanos = new LongAdder();
+
+        void record(long nanos) {
+            int i = 0;
+            while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) {
+                i++;
+            }
+            buckets.incrementAndGet(i);
+            sumNanos.add(nanos);
+        }
+
+        void writeTo(StringBuilder out, String stage) {
+            // Prometheus buckets are cumulative
+            long cumulative = 0;
+            for (int i = 0; i < BOUNDS_NANOS.length; i++) {
+                cumulative += buckets.get(i);
+                out.append("buyogo_stage_seconds_bucket{stage=\"").append(stage).append("\",le=\"")
+                        .append(BOUNDS_NANOS[i] / 1e9).append("\"} ").append(cumulative).append('\n');
+            }
+            cumulative += buckets.get(BOUNDS_NANOS.length);
+            out.append("buyogo_stage_seconds_bucket{stage=\"").append(stage).append("\",le=\"+Inf\"} ")
+                    .append(cumulative).append('\n');
+            out.append("buyogo_stage_seconds_sum{stage=\"").append(stage).append("\"} ")
+                    .append(sumNanos.sum() / 1e9).append('\n');
+            out.append("buyogo_stage_seconds_count{stage=\"").append(stage).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.AyushToCode.Buyogo.service;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.utility.BatchResponse;
+import com.AyushToCode.Buyogo.utility.IngestTicket;
+import com.AyushToCode.Buyogo.utility.RejectionReason;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Async ingest mode. Request threads only validate and enqueue; a single
+ * background writer drains the bounded queue and coalesces events from many
+ * requests into one processBatch call of up to writeBatchSize events.
+ *
+ * Queued batches were already acknowledged with 202, so on shutdown the
+ * writer finishes the queue before it exits. If a coalesced write fails, its
+ * requests are retried one by one so only the failing request's ticket fails.
+ */
+@Service
+@RequiredArgsConstructor
+public class IngestQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestQueue.class);
+
+    private static final long EVICTION_INTERVAL_MS = 1000;
+
+    private final EventService eventService;
+
+    private final IngestMetrics metrics;
+
+    @Value("${buyogo.ingest.async.enabled:false}")
+    private boolean enabled;
+
+    @Value("${buyogo.ingest.async.queue-capacity:1024}")
+    private int queueCapacity;
+
+    @Value("${buyogo.ingest.async.write-batch-size:5000}")
+    private int writeBatchSize;
+
+    // How long shutdown waits for the writer to finish the acknowledged backlog
+    @Value("${buyogo.ingest.async.drain-timeout-ms:30000}")
+    private long drainTimeoutMs;
+
+    // How long finished tickets stay queryable
+    @Value("${buyogo.ingest.async.ticket-retention-ms:600000}")
+    private long ticketRetentionMs;
+
+    private BlockingQueue<PendingBatch> queue;
+    private final Map<String, IngestTicket> tickets = new ConcurrentHashMap<>();
+    private Thread writer;
+    private volatile boolean running;
+
+    private record PendingBatch(IngestTicket ticket, List<MachineEvent> events) {
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = new Thread(this::drainLoop, "ingest-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // New submissions are refused from here on; the writer exits once the queue is empty
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join(drainTimeoutMs);
+            if (writer.isAlive()) {
+                log.warn("Async writer still busy after {} ms, {} queued batches not written",
+                        drainTimeoutMs, queue.size());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Validates the events and queues the valid ones for the writer.
+     * Returns null when the queue is full (or shutting down) so the caller can shed load.
+     */
+    public IngestTicket submit(List<MachineEvent> events) {
+        if (!running) {
+            return null;
+        }
+        IngestTicket ticket = new IngestTicket(UUID.randomUUID().toString());
+        BatchResponse summary = ticket.getSummary();
+
+        List<MachineEvent> valid = new ArrayList<>(events.size());
+        Instant futureLimit = Instant.now().plus(15, ChronoUnit.MINUTES);
+        for (MachineEvent event : events) {
+            RejectionReason rejection = eventService.validate(event, futureLimit);
+            if (rejection != null) {
+                summary.addRejection(event.getEventId(), rejection);
+                metrics.rejected(rejection);
+            } else {
+                valid.add(event);
+            }
+        }
+
+        tickets.put(ticket.getTicketId(), ticket);
+        if (valid.isEmpty()) {
+            ticket.complete();
+            return ticket;
+        }
+        PendingBatch batch = new PendingBatch(ticket, valid);
+        if (!queue.offer(batch)) {
+            tickets.remove(ticket.getTicketId());
+            return null;
+        }
+        // Shutdown began meanwhile and the writer may already have seen an empty queue: take the
+        // batch back unless the writer got it first. Seeing running still true after the offer
+        // means the writer's final empty check comes later and finds the batch.
+        if (!running && queue.remove(batch)) {
+            tickets.remove(ticket.getTicketId());
+            return null;
+        }
+        return ticket;
+    }
+
+    public IngestTicket getTicket(String ticketId) {
+        return tickets.get(ticketId);
+    }
+
+    private void drainLoop() {
+        List<PendingBatch> drained = new ArrayList<>();
+        long nextEviction = 0;
+        while (running || !queue.isEmpty()) {
+            try {
+                // On the clock, not on idle polls, so tickets are evicted under sustained load too
+                long now = System.currentTimeMillis();
+                if (now >= nextEviction) {
+                    evictExpiredTickets(now);
+                    nextEviction = now + EVICTION_INTERVAL_MS;
+                }
+
+                PendingBatch first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                // Coalesce whole requests until the write batch is full or the queue is empty
+                drained.add(first);
+                int size = first.events().size();
+                PendingBatch next;
+                while (size < writeBatchSize && (next = queue.poll()) != null) {
+                    drained.add(next);
+                    size += next.events().size();
+                }
+
+                write(drained, size);
+                drained.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void write(List<PendingBatch> drained, int size) {
+        // Counted into fresh responses and merged into the tickets only after commit,
+        // so a rolled-back write leaves no accepted/updated counts behind
+        List<BatchResponse> attempts = new ArrayList<>(drained.size());
+        List<MachineEvent> events = new ArrayList<>(size);
+        List<BatchResponse> summaries = new ArrayList<>(size);
+        for (PendingBatch batch : drained) {
+            BatchResponse attempt = new BatchResponse();
+            attempts.add(attempt);
+            for (MachineEvent event : batch.events()) {
+                events.add(event);
+                summaries.add(attempt);
+            }
+        }
+
+        try {
+            eventService.processBatch(events, summaries);
+        } catch (RuntimeException e) {
+            if (drained.size() == 1) {
+                log.error("Async write of ticket {} ({} events) failed", drained.getFirst().ticket().getTicketId(),
+                        size, e);
+                drained.getFirst().ticket().fail();
+                return;
+            }
+            // Isolate the failing request instead of failing everyone coalesced with it
+            log.warn("Coalesced async write of {} events failed, retrying its {} requests one by one",
+                    size, drained.size(), e);
+            for (PendingBatch batch : drained) {
+                write(List.of(batch), batch.events().size());
+            }
+            return;
+        }
+        for (int i = 0; i < drained.size(); i++) {
+            IngestTicket ticket = drained.get(i).ticket();
+            ticket.getSummary().merge(attempts.get(i));
+            ticket.complete();
+        }
+    }
+
+    private void evictExpiredTickets(long now) {
+        long cutoff = now - ticketRetentionMs;
+        tickets.values().removeIf(t -> t.getStatus() != IngestTicket.Status.QUEUED && t.getCompletedAt() < cutoff);
+    }
+}
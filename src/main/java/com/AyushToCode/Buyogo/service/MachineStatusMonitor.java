@@ -0,0 +1,356 @@
+package com.AyushToCode.Buyogo.service;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.utility.MachineStatusEvent;
+import com.AyushToCode.Buyogo.utility.StoredEventKey;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Per-machine sliding-window status, kept current by processBatch instead of
+ * by polling /events/stats. Each machine has a ring of per-minute event and
+ * defect counters; a write adds to the minute of its event time (late events
+ * included) and a correction first removes the old version from its minute.
+ *
+ * The status is the /events/stats rule applied to the trailing window of
+ * whole minutes up to and including the current one. Machines touched by a
+ * batch are re-evaluated right after it commits, and all machines on a short
+ * tick so defects ageing out of the window are noticed too. Subscribers only
+ * hear about changes, after a snapshot of the current statuses.
+ *
+ * Each subscriber has a bounded queue drained by its own virtual thread, so
+ * a slow sink never holds up evaluation or other subscribers; one whose queue
+ * fills up is dropped and has to reconnect.
+ */
+@Service
+public class MachineStatusMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(MachineStatusMonitor.class);
+
+    // Accepted events may be up to 15 minutes ahead, so the ring holds those minutes too
+    private static final int FUTURE_MINUTES = 16;
+
+    @Value("${buyogo.status.enabled:false}")
+    private boolean enabled;
+
+    @Value("${buyogo.status.window-minutes:60}")
+    private int windowMinutes;
+
+    // Re-evaluation period for windows that move without new events
+    @Value("${buyogo.status.tick-ms:5000}")
+    private long tickMs;
+
+    // Status changes a subscriber may have queued, beyond its snapshot, before it is dropped
+    @Value("${buyogo.status.subscriber-queue:256}")
+    private int subscriberQueue;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    // Evaluation and publishing run on this one thread, never on an ingest thread
+    private ScheduledExecutorService executor;
+
+    // Deliveries to subscribers' sinks, one drain task at a time per subscriber
+    private ExecutorService senders;
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "machine-status");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::evaluateAll, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        senders = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            senders.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sends the current status of machineId (or of every machine when null)
+     * to sink, then every change after it. The snapshot is taken on the
+     * evaluation thread just before the subscriber is added, so no later
+     * change can reach the sink ahead of it. sink may block; it runs on the
+     * subscriber's own thread. If it throws, or falls subscriber-queue changes
+     * behind, the subscriber is removed and onDropped runs. Returns a handle
+     * that unsubscribes.
+     */
+    public Runnable subscribe(String machineId, Consumer<MachineStatusEvent> sink, Runnable onDropped) {
+        Subscriber subscriber = new Subscriber(machineId, sink, onDropped);
+        executor.execute(() -> {
+            if (subscriber.closed) {
+                return;
+            }
+            List<MachineStatusEvent> snapshot = snapshot(machineId);
+            subscriber.queue = new ArrayBlockingQueue<>(snapshot.size() + subscriberQueue);
+            snapshot.forEach(subscriber::offer);
+            subscribers.add(subscriber);
+            if (subscriber.closed) {
+                subscribers.remove(subscriber); // unsubscribed while being added
+            }
+        });
+        return subscriber::close;
+    }
+
+    /**
+     * Applies a written batch once the surrounding transaction commits. `previous`
+     * are the stored versions of the updated events, whose counts are removed.
+     */
+    public void recordAfterCommit(List<MachineEvent> saved, List<StoredEventKey> previous) {
+        if (!enabled || saved.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            record(saved, previous);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record(saved, previous);
+            }
+        });
+    }
+
+    public void record(List<MachineEvent> saved, List<StoredEventKey> previous) {
+        long nowMinute = minute(Instant.now());
+        Set<String> touched = new HashSet<>();
+
+        for (StoredEventKey old : previous) {
+            window(old.machineId()).add(minute(old.eventTime()), -1, -defects(old.defectCount()), nowMinute);
+            touched.add(old.machineId());
+        }
+        for (MachineEvent event : saved) {
+            window(event.getMachineId()).add(minute(event.getEventTime()), 1, defects(event.getDefectCount()), nowMinute);
+            touched.add(event.getMachineId());
+        }
+        executor.execute(() -> touched.forEach(this::evaluate));
+    }
+
+    // Current status of one machine, or of every machine seen so far when machineId is null
+    public List<MachineStatusEvent> snapshot(String machineId) {
+        long nowMinute = minute(Instant.now());
+        List<MachineStatusEvent> statuses = new ArrayList<>();
+        windows.forEach((id, window) -> {
+            if (machineId == null || machineId.equals(id)) {
+                statuses.add(toEvent(id, window.totals(nowMinute)));
+            }
+        });
+        if (statuses.isEmpty() && machineId != null) {
+            statuses.add(toEvent(machineId, new long[2]));
+        }
+        return statuses;
+    }
+
+    // Clears the minutes before cutoff, after retention deleted their events
+    public void expireBefore(Instant cutoff) {
+        if (!enabled) {
+            return;
+        }
+        long firstKeptMinute = minute(cutoff);
+        windows.values().forEach(window -> window.clearBefore(firstKeptMinute));
+        executor.execute(() -> windows.keySet().forEach(this::evaluate));
+    }
+
+    private void evaluateAll() {
+        try {
+            windows.keySet().forEach(this::evaluate);
+        } catch (RuntimeException e) {
+            log.error("Machine status tick failed", e); // keep the schedule alive
+        }
+    }
+
+    private void evaluate(String machineId) {
+        Window window = windows.get(machineId);
+        MachineStatusEvent event = toEvent(machineId, window.totals(minute(Instant.now())));
+        if (event.getStatus().equals(window.published)) {
+            return;
+        }
+        window.published = event.getStatus();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    private MachineStatusEvent toEvent(String machineId, long[] totals) {
+        double avgDefectRate = totals[1] / (windowMinutes / 60.0);
+        return MachineStatusEvent.builder()
+                .machineId(machineId)
+                .status(EventService.status(avgDefectRate))
+                .eventsCount(totals[0])
+                .defectsCount(totals[1])
+                .avgDefectRate(Math.round(avgDefectRate * 100.0) / 100.0) // Round to 2 decimals
+                .windowMinutes(windowMinutes)
+                .evaluatedAt(Instant.now().toString())
+                .build();
+    }
+
+    private Window window(String machineId) {
+        return windows.computeIfAbsent(machineId, id -> new Window(windowMinutes + FUTURE_MINUTES));
+    }
+
+    private long defects(int defectCount) {
+        return defectCount != -1 ? defectCount : 0;
+    }
+
+    private static long minute(Instant time) {
+        return Math.floorDiv(time.getEpochSecond(), 60);
+    }
+
+    private final class Subscriber {
+        final String machineId;
+        final Consumer<MachineStatusEvent> sink;
+        final Runnable onDropped;
+        final AtomicBoolean draining = new AtomicBoolean();
+        // Set on the evaluation thread before the first offer
+        volatile BlockingQueue<MachineStatusEvent> queue;
+        volatile boolean closed;
+
+        Subscriber(String machineId, Consumer<MachineStatusEvent> sink, Runnable onDropped) {
+            this.machineId = machineId;
+            this.sink = sink;
+            this.onDropped = onDropped;
+        }
+
+        // Called on the evaluation thread; never blocks
+        void offer(MachineStatusEvent event) {
+            if (closed || (machineId != null && !machineId.equals(event.getMachineId()))) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                log.warn("Dropping status subscriber that fell {} changes behind", queue.size());
+                drop();
+                return;
+            }
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                MachineStatusEvent event;
+                while (!closed && (event = queue.poll()) != null) {
+                    try {
+                        sink.accept(event);
+                    } catch (RuntimeException e) {
+                        log.debug("Status subscriber failed", e);
+                        drop();
+                        return;
+                    }
+                }
+                draining.set(false);
+                // An offer between the last poll and the reset found draining still set
+            } while (!closed && !queue.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        void close() {
+            closed = true;
+            subscribers.remove(this);
+        }
+
+        private void drop() {
+            close();
+            try {
+                onDropped.run();
+            } catch (RuntimeException e) {
+                log.warn("Status subscriber drop callback failed", e);
+            }
+        }
+    }
+
+    /**
+     * Ring of per-minute counters; slot i holds minute minutes[i]. A slot is
+     * reused once its minute is older than the ring, which is what slides it.
+     */
+    private final class Window {
+        final long[] minutes;
+        final long[] events;
+        final long[] defects;
+        // Last status sent to listeners; only touched on the executor thread
+        String published = "Healthy";
+
+        Window(int size) {
+            minutes = new long[size];
+            events = new long[size];
+            defects = new long[size];
+            Arrays.fill(minutes, Long.MIN_VALUE);
+        }
+
+        synchronized void add(long minute, long eventDelta, long defectDelta, long nowMinute) {
+            if (minute <= nowMinute - windowMinutes || minute > nowMinute + FUTURE_MINUTES - 1) {
+                return; // outside the window and the accepted future range
+            }
+            int slot = (int) Math.floorMod(minute, (long) minutes.length);
+            if (minutes[slot] != minute) {
+                if (eventDelta < 0 || minutes[slot] > minute) {
+                    return; // the old version's minute was already recycled
+                }
+                minutes[slot] = minute;
+                events[slot] = 0;
+                defects[slot] = 0;
+            }
+            events[slot] += eventDelta;
+            defects[slot] += defectDelta;
+        }
+
+        synchronized void clearBefore(long minute) {
+            for (int i = 0; i < minutes.length; i++) {
+                if (minutes[i] < minute) {
+                    minutes[i] = Long.MIN_VALUE;
+                    events[i] = 0;
+                    defects[i] = 0;
+                }
+            }
+        }
+
+        // {events, defects} over minutes (nowMinute - windowMinutes, nowMinute]
+        synchronized long[] totals(long nowMinute) {
+            long[] totals = new long[2];
+            for (int i = 0; i < minutes.length; i++) {
+                if (minutes[i] > nowMinute - windowMinutes && minutes[i] <= nowMinute) {
+                    totals[0] += events[i];
+                    totals[1] += defects[i];
+                }
+            }
+            return totals;
+        }
+    }
+}
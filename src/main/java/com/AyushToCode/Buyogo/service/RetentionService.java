@@ -0,0 +1,105 @@
+package com.AyushToCode.Buyogo.service;
+
+import com.AyushToCode.Buyogo.repo.DayPartitions;
+import com.AyushToCode.Buyogo.repo.EventShards;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the last buyogo.retention.days UTC days of events (today included)
+ * and expires older data one whole day at a time, oldest first, by dropping
+ * the day's tables (see DayPartitions) rather than deleting rows. The in-memory
+ * views fed on ingest (hot store, heavy hitters, status windows) drop the
+ * same days, and EventLog skips them on replay.
+ */
+@Service
+@RequiredArgsConstructor
+public class RetentionService {
+
+    private static final Logger log = LoggerFactory.getLogger(RetentionService.class);
+
+    private final DayPartitions partitions;
+    private final ObjectProvider<EventShards> eventShards;
+    private final HotEventStore hotEventStore;
+    private final DefectHeavyHitters heavyHitters;
+    private final MachineStatusMonitor statusMonitor;
+
+    // 0 keeps events forever
+    @Value("${buyogo.retention.days:0}")
+    private int retentionDays;
+
+    @Value("${buyogo.retention.check-interval-minutes:60}")
+    private long checkIntervalMinutes;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void start() {
+        if (retentionDays <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "event-retention");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::expireNow, 1, checkIntervalMinutes * 60, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void expireNow() {
+        try {
+            expireBefore(LocalDate.now(ZoneOffset.UTC).minusDays(retentionDays - 1L));
+        } catch (RuntimeException e) {
+            log.error("Event retention run failed", e); // keep the schedule alive
+        }
+    }
+
+    /**
+     * Drops every whole UTC day before firstKeptDay and returns how many days
+     * were dropped. Each day's event and rollup tables go with one DROP TABLE
+     * each, so the cost does not depend on how many rows the day held. Shards,
+     * when configured, drop the same days, and the in-memory views forget
+     * everything before firstKeptDay.
+     */
+    public int expireBefore(LocalDate firstKeptDay) {
+        Instant cutoff = firstKeptDay.atStartOfDay(ZoneOffset.UTC).toInstant();
+        List<LocalDate> expired = partitions.dropBefore(firstKeptDay);
+        if (!expired.isEmpty()) {
+            log.info("Expired the days {}", expired);
+        }
+
+        EventShards shards = eventShards.getIfAvailable();
+        if (shards != null) {
+            int days = shards.dropBefore(firstKeptDay);
+            if (days > 0) {
+                log.info("Expired {} sharded days before {}", days, firstKeptDay);
+            }
+        }
+
+        hotEventStore.expireBefore(cutoff);
+        heavyHitters.expireBefore(cutoff);
+        statusMonitor.expireBefore(cutoff);
+        return expired.size();
+    }
+}
@@ -0,0 +1,237 @@
+package com.AyushToCode.Buyogo.service;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.repo.MachineRepository;
+import com.AyushToCode.Buyogo.repo.RollupRepository;
+import com.AyushToCode.Buyogo.repo.SeriesRepository;
+import com.AyushToCode.Buyogo.utility.DefectRanking;
+import com.AyushToCode.Buyogo.utility.StoredEventKey;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Keeps per machine per minute rollups in step with machine_events and answers
+ * window queries from them. Whole minutes inside a window are read from the
+ * rollups; only the partial minutes at either edge are scanned from raw rows.
+ */
+@Service
+@RequiredArgsConstructor
+public class RollupService {
+
+    private final RollupRepository rollupRepository;
+
+    private final MachineRepository repository;
+
+    private final SeriesRepository seriesRepository;
+
+    private record BucketKey(String machineId, Instant bucketStart) {
+    }
+
+    /**
+     * Applies the rollup deltas of one batch. `saved` are the events about to be
+     * written; `previous` are the stored versions of the ones that are updates,
+     * whose old contribution is subtracted so corrected events stay exact.
+     */
+    public void applyBatch(List<MachineEvent> saved, List<StoredEventKey> previous) {
+        Map<BucketKey, RollupRepository.Delta> deltas = new HashMap<>();
+
+        for (StoredEventKey old : previous) {
+            add(deltas, old.machineId(), old.lineId(), old.factoryId(), old.eventTime(), -1, -defects(old.defectCount()));
+        }
+        for (MachineEvent event : saved) {
+            add(deltas, event.getMachineId(), event.getLineId(), event.getFactoryId(), event.getEventTime(),
+                    1, defects(event.getDefectCount()));
+        }
+
+        // Fixed (machine, bucket) order so concurrent batches lock rollup rows in the same order
+        List<RollupRepository.Delta> ordered = new ArrayList<>(deltas.values());
+        ordered.sort(Comparator.comparing(RollupRepository.Delta::machineId)
+                .thenComparing(RollupRepository.Delta::bucketStart));
+        rollupRepository.applyDeltas(ordered);
+    }
+
+    private void add(Map<BucketKey, RollupRepository.Delta> deltas, String machineId, String lineId,
+                     String factoryId, Instant eventTime, long count, long defects) {
+        Instant bucket = eventTime.truncatedTo(ChronoUnit.MINUTES);
+        deltas.merge(new BucketKey(machineId, bucket),
+                new RollupRepository.Delta(machineId, bucket, lineId, factoryId, count, defects),
+                (a, b) -> new RollupRepository.Delta(machineId, bucket, b.lineId(), b.factoryId(),
+                        a.eventCount() + b.eventCount(), a.defectSum() + b.defectSum()));
+    }
+
+    // -1 means "defects unknown" and is excluded from sums
+    private static long defects(int defectCount) {
+        return defectCount != -1 ? defectCount : 0;
+    }
+
+    // Returns {eventsCount, defectsCount} for machineId in [start, end)
+    public long[] machineTotals(String machineId, Instant start, Instant end) {
+        Instant fullStart = ceilToMinute(start);
+        Instant fullEnd = end.truncatedTo(ChronoUnit.MINUTES);
+
+        if (!fullStart.isBefore(fullEnd)) {
+            // Window shorter than one whole bucket
+            return rawMachineTotals(machineId, start, end);
+        }
+
+        long[] totals = rollupRepository.machineTotals(machineId, fullStart, fullEnd);
+        if (start.isBefore(fullStart)) {
+            addTo(totals, rawMachineTotals(machineId, start, fullStart));
+        }
+        if (fullEnd.isBefore(end)) {
+            addTo(totals, rawMachineTotals(machineId, fullEnd, end));
+        }
+        return totals;
+    }
+
+    // Per machine {eventsCount, defectsCount} in [start, end) for the given machines
+    public Map<String, long[]> machineTotals(List<String> machineIds, Instant start, Instant end) {
+        return groupedMachineTotals(start, end,
+                (s, e) -> repository.getStatsDataByMachines(machineIds, s, e),
+                (s, e) -> rollupRepository.totalsByMachines(machineIds, s, e));
+    }
+
+    // Per machine {eventsCount, defectsCount} in [start, end) for every machine on the line
+    public Map<String, long[]> lineMachineTotals(String lineId, Instant start, Instant end) {
+        return groupedMachineTotals(start, end,
+                (s, e) -> repository.getStatsDataByLine(lineId, s, e),
+                (s, e) -> rollupRepository.totalsByLine(lineId, s, e));
+    }
+
+    /**
+     * `raw` and `rollup` return grouped rows of {machineId, eventCount, defectSum}
+     * for a sub-range, from machine_events and from the rollups respectively.
+     */
+    private Map<String, long[]> groupedMachineTotals(Instant start, Instant end,
+                                                    BiFunction<Instant, Instant, List<Object[]>> raw,
+                                                    BiFunction<Instant, Instant, List<Object[]>> rollup) {
+        Instant fullStart = ceilToMinute(start);
+        Instant fullEnd = end.truncatedTo(ChronoUnit.MINUTES);
+
+        Map<String, long[]> byMachine = new HashMap<>();
+        if (!fullStart.isBefore(fullEnd)) {
+            mergeMachines(byMachine, raw.apply(start, end));
+            return byMachine;
+        }
+
+        mergeMachines(byMachine, rollup.apply(fullStart, fullEnd));
+        if (start.isBefore(fullStart)) {
+            mergeMachines(byMachine, raw.apply(start, fullStart));
+        }
+        if (fullEnd.isBefore(end)) {
+            mergeMachines(byMachine, raw.apply(fullEnd, end));
+        }
+        return byMachine;
+    }
+
+    /**
+     * Top `limit` rows of {lineId, totalDefects, eventCount} for factoryId in
+     * [from, to), in the same shape as MachineRepository.findTopDefectLines.
+     * Minute-aligned windows push the ranking and limit into the rollup query;
+     * otherwise the per-line partials are merged first (a factory has few lines).
+     */
+    public List<Object[]> lineTotals(String factoryId, Instant from, Instant to, DefectRanking ranking, int limit) {
+        Instant fullStart = ceilToMinute(from);
+        Instant fullEnd = to.truncatedTo(ChronoUnit.MINUTES);
+
+        if (fullStart.equals(from) && fullEnd.equals(to) && fullStart.isBefore(fullEnd)) {
+            return rollupRepository.topLines(factoryId, fullStart, fullEnd, ranking, limit);
+        }
+
+        Map<String, long[]> byLine = new HashMap<>();
+        if (!fullStart.isBefore(fullEnd)) {
+            mergeLines(byLine, repository.findTopDefectLines(factoryId, from, to));
+        } else {
+            mergeLines(byLine, rollupRepository.lineTotals(factoryId, fullStart, fullEnd));
+            if (from.isBefore(fullStart)) {
+                mergeLines(byLine, repository.findTopDefectLines(factoryId, from, fullStart));
+            }
+            if (fullEnd.isBefore(to)) {
+                mergeLines(byLine, repository.findTopDefectLines(factoryId, fullEnd, to));
+            }
+        }
+
+        List<Object[]> rows = new ArrayList<>(byLine.size());
+        byLine.forEach((lineId, t) -> {
+            if (t[1] > 0) {
+                rows.add(new Object[]{lineId, t[0], t[1]});
+            }
+        });
+        rows.sort(ranking == DefectRanking.DEFECTS_PERCENT
+                ? Comparator.comparingDouble((Object[] r) -> (long) r[1] * 100.0 / (long) r[2]).reversed()
+                : Comparator.comparingLong((Object[] r) -> (long) r[1]).reversed());
+        return rows.size() > limit ? rows.subList(0, limit) : rows;
+    }
+
+    /**
+     * Feeds the series buckets for [from, to) to the consumer: whole minutes
+     * from the rollups, the partial minutes at either edge from raw rows.
+     * Buckets are whole multiples of the interval, so a rollup minute never
+     * straddles two of them.
+     */
+    public void series(SeriesRepository.Scope scope, String id, Instant base, long intervalSeconds,
+                       Instant from, Instant to, SeriesRepository.BucketConsumer consumer) {
+        Instant fullStart = ceilToMinute(from);
+        Instant fullEnd = to.truncatedTo(ChronoUnit.MINUTES);
+
+        if (!fullStart.isBefore(fullEnd)) {
+            seriesRepository.rawSeries(scope, id, base, intervalSeconds, from, to, consumer);
+            return;
+        }
+
+        seriesRepository.rollupSeries(scope, id, base, intervalSeconds, fullStart, fullEnd, consumer);
+        if (from.isBefore(fullStart)) {
+            seriesRepository.rawSeries(scope, id, base, intervalSeconds, from, fullStart, consumer);
+        }
+        if (fullEnd.isBefore(to)) {
+            seriesRepository.rawSeries(scope, id, base, intervalSeconds, fullEnd, to, consumer);
+        }
+    }
+
+    private long[] rawMachineTotals(String machineId, Instant start, Instant end) {
+        List<Object[]> results = repository.getStatsData(machineId, start, end);
+        if (results == null || results.isEmpty()) {
+            return new long[2];
+        }
+        Object[] row = results.getFirst();
+        return new long[]{
+                (row[0] != null) ? ((Number) row[0]).longValue() : 0,
+                (row[1] != null) ? ((Number) row[1]).longValue() : 0
+        };
+    }
+
+    static void mergeMachines(Map<String, long[]> byMachine, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            long[] t = byMachine.computeIfAbsent((String) row[0], k -> new long[2]);
+            t[0] += ((Number) row[1]).longValue();
+            t[1] += (row[2] != null) ? ((Number) row[2]).longValue() : 0;
+        }
+    }
+
+    private static void mergeLines(Map<String, long[]> byLine, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            long[] t = byLine.computeIfAbsent((String) row[0], k -> new long[2]);
+            t[0] += (row[1] != null) ? ((Number) row[1]).longValue() : 0;
+            t[1] += ((Number) row[2]).longValue();
+        }
+    }
+
+    private static void addTo(long[] totals, long[] more) {
+        totals[0] += more[0];
+        totals[1] += more[1];
+    }
+
+    private static Instant ceilToMinute(Instant t) {
+        Instant floor = t.truncatedTo(ChronoUnit.MINUTES);
+        return floor.equals(t) ? t : floor.plus(1, ChronoUnit.MINUTES);
+    }
+}
@@ -0,0 +1,120 @@
+package com.AyushToCode.Buyogo.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Maps machineId to its line and factory. The mapping is an immutable snapshot
+ * held in an AtomicReference: lookups are a single hash probe returning a shared
+ * Placement, and reload() swaps the whole snapshot without blocking ingest.
+ *
+ * Only machines listed in the file are placed explicitly. This differs from the
+ * old compareTo("M-010") rule, which also put IDs such as "A-1" or "M-0001" on
+ * LINE-01; those now get the unknown-machine policy.
+ */
+@Service
+@RequiredArgsConstructor
+public class TopologyRegistry {
+
+    public enum UnknownMachinePolicy { REJECT, DEFAULT }
+
+    public record Placement(String lineId, String factoryId) {
+    }
+
+    private record Snapshot(Map<String, Placement> placements, Placement fallback) {
+    }
+
+    private final ResourceLoader resourceLoader;
+
+    // CSV of machineId,lineId,factoryId; lines starting with # are ignored
+    @Value("${buyogo.topology.location:classpath:topology.csv}")
+    private String location;
+
+    @Value("${buyogo.topology.unknown-machine:DEFAULT}")
+    private UnknownMachinePolicy unknownMachinePolicy;
+
+    @Value("${buyogo.topology.default-line:LINE-02}")
+    private String defaultLine;
+
+    @Value("${buyogo.topology.default-factory:F01}")
+    private String defaultFactory;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+
+    @PostConstruct
+    public void reload() {
+        replace(load(resourceLoader.getResource(location)));
+    }
+
+    /**
+     * Atomically swaps in a new mapping. Readers see either the old or the new
+     * snapshot, never a mix.
+     */
+    public void replace(Map<String, Placement> placements) {
+        Map<String, Placement> interned = new HashMap<>(placements.size() * 2);
+        Map<Placement, Placement> shared = new HashMap<>();
+        placements.forEach((machineId, p) -> {
+            // One Placement instance per (line, factory) pair, with interned IDs
+            Placement canonical = shared.computeIfAbsent(p,
+                    k -> new Placement(k.lineId().intern(), k.factoryId().intern()));
+            interned.put(machineId.intern(), canonical);
+        });
+
+        Placement fallback = unknownMachinePolicy == UnknownMachinePolicy.DEFAULT
+                ? new Placement(defaultLine.intern(), defaultFactory.intern())
+                : null;
+        current.set(new Snapshot(Map.copyOf(interned), fallback));
+    }
+
+    /**
+     * Returns the placement of the machine, the configured default for unknown
+     * machines, or null if unknown machines are rejected.
+     */
+    public Placement lookup(String machineId) {
+        Snapshot snapshot = current.get();
+        if (machineId == null) {
+            return snapshot.fallback();
+        }
+        Placement placement = snapshot.placements().get(machineId);
+        return placement != null ? placement : snapshot.fallback();
+    }
+
+    public int size() {
+        return current.get().placements().size();
+    }
+
+    private static Map<String, Placement> load(Resource resource) {
+        Map<String, Placement> placements = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] cols = line.split(",");
+                if (cols.length != 3) {
+                    throw new IllegalStateException("Bad topology row: " + line);
+                }
+                placements.put(cols[0].trim(), new Placement(cols[1].trim(), cols[2].trim()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read topology from " + resource, e);
+        }
+        return placements;
+    }
+}
@@ -8,14 +8,31 @@ public class BatchResponse {
     private int deduped = 0;  // Identical IDs and payloads ignored [cite: 60]
     private int updated = 0;  // Same ID but different payload [cite: 61]
     private int rejected = 0; // Failed validation (duration/time) [cite: 62]
-    private List<Rejection> rejections = new ArrayList<>(); // List of errors [cite: 63]
+    private List<Rejection> rejections; // List of errors [cite: 63], created on first rejection
 
     // Helper method to add a rejection
-    public void addRejection(String eventId, String reason) {
+    public void addRejection(String eventId, RejectionReason reason) {
+        if (this.rejections == null) {
+            this.rejections = new ArrayList<>();
+        }
         this.rejections.add(new Rejection(eventId, reason));
         this.rejected++;
     }
 
+    // Folds the counts of another (e.g. per-chunk) response into this one
+    public void merge(BatchResponse other) {
+        this.accepted += other.accepted;
+        this.deduped += other.deduped;
+        this.updated += other.updated;
+        this.rejected += other.rejected;
+        if (other.rejections != null) {
+            if (this.rejections == null) {
+                this.rejections = new ArrayList<>(other.rejections.size());
+            }
+            this.rejections.addAll(other.rejections);
+        }
+    }
+
     // Standard Getters and increment helpers
     public void incrementAccepted() { this.accepted++; }
     public void incrementDeduped() { this.deduped++; }
@@ -25,19 +42,19 @@ public class BatchResponse {
     public int getDeduped() { return deduped; }
     public int getUpdated() { return updated; }
     public int getRejected() { return rejected; }
-    public List<Rejection> getRejections() { return rejections; }
+    public List<Rejection> getRejections() { return rejections != null ? rejections : List.of(); }
 
     // Nested class for specific rejection details [cite: 64]
     public static class Rejection {
         private String eventId;
-        private String reason;
+        private RejectionReason reason;
 
-        public Rejection(String eventId, String reason) {
+        public Rejection(String eventId, RejectionReason reason) {
             this.eventId = eventId;
             this.reason = reason;
         }
 
         public String getEventId() { return eventId; }
-        public String getReason() { return reason; }
+        public RejectionReason getReason() { return reason; }
     }
 }
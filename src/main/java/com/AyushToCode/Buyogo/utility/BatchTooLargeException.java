@@ -0,0 +1,12 @@
+package com.AyushToCode.Buyogo.utility;
+
+/**
+ * A batch that declares more events than the server accepts in one request.
+ * MachineController maps it to 413, like an oversized JSON batch.
+ */
+public class BatchTooLargeException extends InvalidRequestException {
+
+    public BatchTooLargeException(String message) {
+        super(message);
+    }
+}
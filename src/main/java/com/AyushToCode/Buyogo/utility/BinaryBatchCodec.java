@@ -0,0 +1,203 @@
+package com.AyushToCode.Buyogo.utility;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of an event batch (content type application/x-buyogo-batch).
+ *
+ * <pre>
+ * "BYG1"                          magic + version
+ * varint  machineCount            dictionary of machine IDs
+ *   varint len, UTF-8 bytes       ... one per machine
+ * varint  eventCount
+ *   varint len, UTF-8 bytes       eventId
+ *   varint                        index into the machine dictionary
+ *   zigzag varint                 eventTime in epoch millis, delta from the previous event (first: from 0)
+ *   zigzag varint                 durationMs
+ *   zigzag varint                 defectCount (-1 = unknown)
+ * </pre>
+ *
+ * Decoded machine IDs are shared String instances from the dictionary.
+ *
+ * Counts and lengths on the wire are untrusted: nothing is sized from them
+ * up front, counts above maxEvents are refused with BatchTooLargeException,
+ * and malformed or truncated input is an InvalidRequestException (400).
+ */
+public final class BinaryBatchCodec {
+
+    public static final String CONTENT_TYPE = "application/x-buyogo-batch";
+
+    private static final byte[] MAGIC = {'B', 'Y', 'G', '1'};
+
+    // Guards against absurd lengths in malformed input
+    private static final int MAX_STRING_BYTES = 1024;
+
+    private BinaryBatchCodec() {
+    }
+
+    // Every machine is used by at least one event, so both counts are bounded by maxEvents
+    public static List<MachineEvent> decode(InputStream in, int maxEvents) throws IOException {
+        for (byte b : MAGIC) {
+            if (readByte(in) != b) {
+                throw new InvalidRequestException("Not a " + CONTENT_TYPE + " payload");
+            }
+        }
+
+        int machineCount = readCount(in, maxEvents, "machines");
+        List<String> machines = new ArrayList<>();
+        for (int i = 0; i < machineCount; i++) {
+            machines.add(readString(in));
+        }
+
+        int eventCount = readCount(in, maxEvents, "events");
+        List<MachineEvent> events = new ArrayList<>();
+        long eventTime = 0;
+        for (int i = 0; i < eventCount; i++) {
+            String eventId = readString(in);
+            int machine = readVarInt(in);
+            if (machine >= machineCount) {
+                throw new InvalidRequestException("Machine index " + machine + " out of range");
+            }
+            eventTime += readZigZag(in);
+
+            MachineEvent event = new MachineEvent();
+            event.setEventId(eventId);
+            event.setMachineId(machines.get(machine));
+            event.setEventTime(Instant.ofEpochMilli(eventTime));
+            event.setDurationMs(readZigZagInt(in, "durationMs"));
+            event.setDefectCount(readZigZagInt(in, "defectCount"));
+            events.add(event);
+        }
+        return events;
+    }
+
+    public static byte[] encode(List<MachineEvent> events) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(events.size() * 24);
+        out.writeBytes(MAGIC);
+
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> machines = new ArrayList<>();
+        for (MachineEvent event : events) {
+            if (dictionary.putIfAbsent(event.getMachineId(), machines.size()) == null) {
+                machines.add(event.getMachineId());
+            }
+        }
+        writeVarInt(out, machines.size());
+        machines.forEach(m -> writeString(out, m));
+
+        writeVarInt(out, events.size());
+        long previousTime = 0;
+        for (MachineEvent event : events) {
+            long time = event.getEventTime().toEpochMilli();
+            writeString(out, event.getEventId());
+            writeVarInt(out, dictionary.get(event.getMachineId()));
+            writeZigZag(out, time - previousTime);
+            writeZigZag(out, event.getDurationMs());
+            writeZigZag(out, event.getDefectCount());
+            previousTime = time;
+        }
+        return out.toByteArray();
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new InvalidRequestException("Truncated " + CONTENT_TYPE + " payload");
+        }
+        return b;
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte(in);
+            if (shift == 63 && (b & 0x7E) != 0) {
+                throw new InvalidRequestException("Varint out of range");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new InvalidRequestException("Varint too long");
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new InvalidRequestException("Varint out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    private static int readCount(InputStream in, int max, String what) throws IOException {
+        int count = readVarInt(in);
+        if (count > max) {
+            throw new BatchTooLargeException(count + " " + what + " exceeds the limit of " + max);
+        }
+        return count;
+    }
+
+    private static long readZigZag(InputStream in) throws IOException {
+        long v = readVarLong(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // A value that does not fit the int field is rejected rather than wrapped
+    private static int readZigZagInt(InputStream in, String field) throws IOException {
+        long value = readZigZag(in);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new InvalidRequestException(field + " out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        int len = readVarInt(in);
+        if (len > MAX_STRING_BYTES) {
+            throw new InvalidRequestException("String of " + len + " bytes exceeds limit");
+        }
+        byte[] bytes = in.readNBytes(len);
+        if (bytes.length != len) {
+            throw new InvalidRequestException("Truncated " + CONTENT_TYPE + " payload");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarLong(OutputStream out, long value) {
+        try {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // ByteArrayOutputStream does not throw
+        }
+    }
+
+    private static void writeVarInt(OutputStream out, int value) {
+        writeVarLong(out, value);
+    }
+
+    private static void writeZigZag(OutputStream out, long value) {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+}
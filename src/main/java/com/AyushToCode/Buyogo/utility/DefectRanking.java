@@ -0,0 +1,18 @@
+package com.AyushToCode.Buyogo.utility;
+
+/**
+ * Ordering for the top-defect-lines query.
+ */
+public enum DefectRanking {
+    TOTAL_DEFECTS,   // SUM of defects, descending
+    DEFECTS_PERCENT; // defects per 100 events, descending
+
+    // Accepts the response field names used by the API (totalDefects / defectsPercent)
+    public static DefectRanking fromParam(String orderBy) {
+        return switch (orderBy) {
+            case "totalDefects", "TOTAL_DEFECTS" -> TOTAL_DEFECTS;
+            case "defectsPercent", "DEFECTS_PERCENT" -> DEFECTS_PERCENT;
+            default -> throw new InvalidRequestException("Unknown orderBy: " + orderBy);
+        };
+    }
+}
@@ -0,0 +1,8 @@
+package com.AyushToCode.Buyogo.utility;
+
+/**
+ * Projection of a stored event used for dedupe: just the id and its payload hash,
+ * so the lookup does not hydrate full MachineEvent entities.
+ */
+public record EventFingerprint(String eventId, long payloadHash) {
+}
@@ -0,0 +1,47 @@
+package com.AyushToCode.Buyogo.utility;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Handle returned for an async batch. The counts are filled in by the
+ * background writer; they are only final once status is DONE.
+ */
+public class IngestTicket {
+
+    public enum Status { QUEUED, DONE, FAILED }
+
+    private final String ticketId;
+    private final BatchResponse result = new BatchResponse();
+    private volatile Status status = Status.QUEUED;
+    private volatile long completedAt;
+
+    public IngestTicket(String ticketId) {
+        this.ticketId = ticketId;
+    }
+
+    public String getTicketId() { return ticketId; }
+    public Status getStatus() { return status; }
+
+    // Counts are only exposed once the writer has finished with the ticket
+    public BatchResponse getResult() { return status == Status.QUEUED ? null : result; }
+
+    @JsonIgnore
+    public BatchResponse getSummary() { return result; }
+
+    @JsonIgnore
+    public long getCompletedAt() { return completedAt; }
+
+    // Called by the writer once the write containing this ticket's events has committed
+    public void complete() {
+        finish(Status.DONE);
+    }
+
+    public void fail() {
+        finish(Status.FAILED);
+    }
+
+    private void finish(Status finalStatus) {
+        completedAt = System.currentTimeMillis();
+        status = finalStatus; // volatile write publishes the counts to readers
+    }
+}
@@ -0,0 +1,16 @@
+package com.AyushToCode.Buyogo.utility;
+
+/**
+ * A request parameter or body the client got wrong. MachineController maps it
+ * to 400 with the message; any other exception stays a server error.
+ */
+public class InvalidRequestException extends RuntimeException {
+
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+
+    public InvalidRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
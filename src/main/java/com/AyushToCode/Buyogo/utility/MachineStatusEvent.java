@@ -0,0 +1,25 @@
+package com.AyushToCode.Buyogo.utility;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * One machine's status over the trailing window, as pushed on /status/stream.
+ */
+@Data
+@Builder
+public class MachineStatusEvent {
+    private String machineId;
+
+    private String status;        // "Healthy" or "Warning", same rule as /events/stats
+
+    private long eventsCount;     // Events in the window
+
+    private long defectsCount;    // Sum of defects in the window, excluding -1 values
+
+    private double avgDefectRate; // Defects per hour over the window
+
+    private int windowMinutes;
+
+    private String evaluatedAt;   // ISO-8601
+}
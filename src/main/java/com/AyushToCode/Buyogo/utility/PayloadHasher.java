@@ -0,0 +1,55 @@
+package com.AyushToCode.Buyogo.utility;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+
+import java.time.Instant;
+
+/**
+ * 64-bit fingerprint over the fields that define an event's payload
+ * (machineId, durationMs, defectCount, eventTime). Two events with the same
+ * eventId and the same fingerprint are treated as identical for dedupe.
+ */
+public final class PayloadHasher {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private PayloadHasher() {
+    }
+
+    public static long hash(MachineEvent event) {
+        long h = FNV_OFFSET;
+
+        String machineId = event.getMachineId();
+        if (machineId != null) {
+            for (int i = 0; i < machineId.length(); i++) {
+                h = (h ^ machineId.charAt(i)) * FNV_PRIME;
+            }
+        }
+
+        h = mix(h, event.getDurationMs());
+        h = mix(h, event.getDefectCount());
+
+        Instant eventTime = event.getEventTime();
+        if (eventTime != null) {
+            h = mix(h, eventTime.getEpochSecond());
+            h = mix(h, eventTime.getNano());
+        }
+
+        return finish(h);
+    }
+
+    private static long mix(long h, long value) {
+        return (h ^ value) * FNV_PRIME;
+    }
+
+    // MurmurHash3 fmix64 finalizer to spread the low-entropy numeric fields
+    private static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
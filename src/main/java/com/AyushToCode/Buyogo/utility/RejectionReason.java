@@ -0,0 +1,10 @@
+package com.AyushToCode.Buyogo.utility;
+
+/**
+ * Why an event was rejected. Serialized by name in BatchResponse.rejections.
+ */
+public enum RejectionReason {
+    INVALID_DURATION,  // durationMs outside 0..6 hours
+    FUTURE_EVENT_TIME, // eventTime more than 15 minutes ahead of the server clock
+    UNKNOWN_MACHINE    // machineId not in the topology and unknown machines are rejected
+}
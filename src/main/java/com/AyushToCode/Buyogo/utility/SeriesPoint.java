@@ -0,0 +1,33 @@
+package com.AyushToCode.Buyogo.utility;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeriesPoint {
+
+    /**
+     * Start of the bucket (ISO-8601); the bucket covers [bucketStart, bucketStart + interval)
+     */
+    private String bucketStart;
+
+    /**
+     * Number of events in the bucket
+     */
+    private long eventsCount;
+
+    /**
+     * Sum of defects in the bucket, excluding -1 values
+     */
+    private long defectsCount;
+
+    /**
+     * Defects per hour within the bucket, rounded to 2 decimals
+     */
+    private double avgDefectRate;
+}
@@ -0,0 +1,11 @@
+package com.AyushToCode.Buyogo.utility;
+
+import java.time.Instant;
+
+/**
+ * The stored fields of an event that decide which rollup bucket it counts
+ * towards. Loaded for updated events so their old contribution can be removed.
+ */
+public record StoredEventKey(String eventId, String machineId, String lineId, String factoryId,
+                             Instant eventTime, int defectCount) {
+}
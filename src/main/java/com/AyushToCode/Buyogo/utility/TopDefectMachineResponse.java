@@ -0,0 +1,29 @@
+package com.AyushToCode.Buyogo.utility;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TopDefectMachineResponse {
+
+    /**
+     * The ID of the machine
+     */
+    private String machineId;
+
+    /**
+     * Estimated defects in the window rounded out to whole hours; never lower
+     * than the true count there, corrections included
+     */
+    private long estimatedDefects;
+
+    /**
+     * Maximum overestimation: the true count is at least estimatedDefects - maxError
+     */
+    private long maxError;
+}
@@ -1,4 +1,9 @@
-CREATE TABLE machine_events (
+-- machine_events and machine_minute_rollups are stored one table per UTC day
+-- (machine_events_YYYYMMDD, machine_minute_rollups_YYYYMMDD), created and
+-- dropped by DayPartitions with the same columns as these templates. The
+-- templates never hold rows; reads go through the views, which DayPartitions
+-- re-creates as a UNION ALL of the templates and every day table.
+CREATE TABLE machine_events_template (
     event_id VARCHAR(50) PRIMARY KEY,
     machine_id VARCHAR(50) NOT NULL,
     line_id VARCHAR(50),
@@ -7,5 +12,19 @@ CREATE TABLE machine_events (
     received_time TIMESTAMP NOT NULL,
     duration_ms INT NOT NULL,
     defect_count INT NOT NULL,
-    payload_hash INT -- Optional: used for quick identical payload comparison
-);
\ No newline at end of file
+    payload_hash BIGINT NOT NULL -- 64-bit payload fingerprint used for dedupe
+);
+
+-- Per machine per minute pre-aggregates, maintained by processBatch
+CREATE TABLE machine_minute_rollups_template (
+    machine_id VARCHAR(50) NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    line_id VARCHAR(50),
+    factory_id VARCHAR(50),
+    event_count BIGINT NOT NULL,
+    defect_sum BIGINT NOT NULL, -- excludes defect_count = -1
+    PRIMARY KEY (machine_id, bucket_start)
+);
+
+CREATE VIEW machine_events AS SELECT * FROM machine_events_template;
+CREATE VIEW machine_minute_rollups AS SELECT * FROM machine_minute_rollups_template;
@@ -1,30 +1,85 @@
 package com.AyushToCode.Buyogo;
 
+import com.AyushToCode.Buyogo.config.AdmissionBodyLimitFilter;
 import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.repo.DayPartitions;
+import com.AyushToCode.Buyogo.repo.EventLog;
+import com.AyushToCode.Buyogo.repo.EventShards;
 import com.AyushToCode.Buyogo.repo.MachineRepository;
+import com.AyushToCode.Buyogo.repo.RollupRepository;
+import com.AyushToCode.Buyogo.service.DefectHeavyHitters;
+import com.AyushToCode.Buyogo.service.EventIdLocks;
 import com.AyushToCode.Buyogo.service.EventService;
+import com.AyushToCode.Buyogo.service.HotEventStore;
+import com.AyushToCode.Buyogo.service.MachineStatusMonitor;
+import com.AyushToCode.Buyogo.service.RetentionService;
+import com.AyushToCode.Buyogo.utility.BatchResponse;
+import com.AyushToCode.Buyogo.utility.BatchTooLargeException;
+import com.AyushToCode.Buyogo.utility.BinaryBatchCodec;
+import com.AyushToCode.Buyogo.utility.DefectRanking;
+import com.AyushToCode.Buyogo.utility.EventFingerprint;
+import com.AyushToCode.Buyogo.utility.PayloadHasher;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.test.web.servlet.MvcResult;
 import tools.jackson.databind.ObjectMapper;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -43,9 +98,31 @@ class BuyogoApplicationTests {
     @Autowired
     private MachineRepository repository;
 
+    @Autowired
+    private RollupRepository rollupRepository;
+
+    @Autowired
+    private HotEventStore hotEventStore;
+
+    @Autowired
+    private RetentionService retentionService;
+
+    @Autowired
+    private DayPartitions dayPartitions;
+
+    @Autowired
+    private DefectHeavyHitters heavyHitters;
+
+    @Autowired
+    private MachineStatusMonitor statusMonitor;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     @BeforeEach
     void setup() {
-        repository.deleteAll();
+        dayPartitions.dropAll();
+        hotEventStore.clear();
     }
 
     @Test
@@ -118,6 +195,51 @@ class BuyogoApplicationTests {
         System.out.println(">>> Thread-Safety Test: Successfully handled 20 concurrent requests.");
     }
 
+    /**
+     * 64 concurrent batches over a shared pool of 200 event IDs. Every ID must be
+     * accepted exactly once, every batch must commit, and the outcome counts
+     * must add up to the number of events sent.
+     */
+    @Test
+    void testEventIdLocks_OverlappingBatchesStress() throws Exception {
+        int threads = 64;
+        int idPool = 200;
+        int batchSize = 100;
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<java.util.concurrent.Future<BatchResponse>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            futures.add(executor.submit(() -> {
+                List<MachineEvent> batch = new ArrayList<>();
+                for (int i = 0; i < batchSize; i++) {
+                    int id = (seed * 37 + i * 13) % idPool;
+                    // Half of the threads send a different payload, producing real updates
+                    batch.add(createEvent("OVERLAP-" + id, "M-001", 1000 + (seed % 2), 0, now));
+                }
+                startGate.await();
+                return eventService.processBatch(batch);
+            }));
+        }
+        startGate.countDown();
+
+        int accepted = 0;
+        int total = 0;
+        for (java.util.concurrent.Future<BatchResponse> f : futures) {
+            BatchResponse r = f.get(60, TimeUnit.SECONDS); // throws if any batch failed
+            accepted += r.getAccepted();
+            total += r.getAccepted() + r.getUpdated() + r.getDeduped() + r.getRejected();
+        }
+        executor.shutdown();
+
+        long distinctIds = repository.count();
+        assertEquals(distinctIds, accepted, "Each event ID must be accepted exactly once");
+        assertEquals(threads * batchSize, total);
+    }
+
     @Test
     void testBusinessRules_Dedupe_Update_Validation() throws Exception {
         String eventId = "TEST-001";
@@ -177,6 +299,989 @@ class BuyogoApplicationTests {
                 .andExpect(jsonPath("$.defectsCount").value(5)); // 5 (E1) + 1 (E3). E2's -1 is ignored.
     }
 
+    @Test
+    void testEventIdLocks_OnlySharedIdsWaitAndWaitsTimeOut() throws Exception {
+        EventIdLocks locks = new EventIdLocks(200);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> holder = executor.submit(() -> tx.executeWithoutResult(status -> {
+            locks.lockUntilCompletion(List.of("LOCK-1", "LOCK-2"));
+            held.countDown();
+            try {
+                finish.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+
+        // Disjoint IDs do not wait, a shared one times out
+        long start = System.nanoTime();
+        tx.executeWithoutResult(status -> locks.lockUntilCompletion(List.of("LOCK-3", "LOCK-4")));
+        assertTrue(System.nanoTime() - start < 150_000_000L, "disjoint batch must not wait");
+        assertThrows(CannotAcquireLockException.class,
+                () -> tx.executeWithoutResult(status -> locks.lockUntilCompletion(List.of("LOCK-0", "LOCK-2"))));
+
+        // Released on completion, including the claim on LOCK-0 taken before the timeout
+        finish.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+        tx.executeWithoutResult(status -> locks.lockUntilCompletion(List.of("LOCK-0", "LOCK-1", "LOCK-2")));
+    }
+
+    @Test
+    void testStreamIngestion_AggregatesAcrossChunks() throws Exception {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+        // 2,500 events so the stream spans several chunks
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 2500; i++) {
+            int duration = (i % 500 == 0) ? -1 : 1000; // 5 invalid durations
+            ndjson.append(objectMapper.writeValueAsString(createEvent("STREAM-" + i, "M-001", duration, 0, now)))
+                    .append('\n');
+        }
+
+        mockMvc.perform(post("/events/stream")
+                        .contentType("application/x-ndjson")
+                        .content(ndjson.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(2495))
+                .andExpect(jsonPath("$.rejected").value(5));
+    }
+
+    @Test
+    void testRollups_CorrectionMovesDefectsBetweenBuckets() throws Exception {
+        String machineId = "M-ROLLUP";
+        Instant start = Instant.parse("2026-01-02T10:00:00Z");
+        Instant end = Instant.parse("2026-01-02T11:00:00Z");
+
+        sendBatch(List.of(createEvent("R1", machineId, 1000, 4, start.plus(5, ChronoUnit.MINUTES))));
+
+        // Correction moves the event out of the window and changes its defects
+        sendBatch(List.of(createEvent("R1", machineId, 1000, 7, end.plus(5, ChronoUnit.MINUTES))))
+                .andExpect(jsonPath("$.updated").value(1));
+
+        // Window with partial minutes at both edges (raw edges + whole buckets)
+        mockMvc.perform(get("/events/stats")
+                        .param("machineId", machineId)
+                        .param("start", start.plus(30, ChronoUnit.SECONDS).toString())
+                        .param("end", end.plus(10, ChronoUnit.MINUTES).plus(30, ChronoUnit.SECONDS).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.eventsCount").value(1))
+                .andExpect(jsonPath("$.defectsCount").value(7));
+
+        mockMvc.perform(get("/events/stats")
+                        .param("machineId", machineId)
+                        .param("start", start.toString())
+                        .param("end", end.toString()))
+                .andExpect(jsonPath("$.eventsCount").value(0))
+                .andExpect(jsonPath("$.defectsCount").value(0));
+    }
+
+    @Test
+    void testMetricsEndpoint_PrometheusFormat() throws Exception {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        sendBatch(List.of(createEvent("MET-1", "M-001", 1000, 0, now),
+                createEvent("MET-2", "M-001", -5, 0, now)));
+
+        mockMvc.perform(get("/metrics"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("buyogo_stage_seconds_count{stage=\"process_batch\"}")))
+                .andExpect(content().string(containsString("buyogo_rejections_total{reason=\"INVALID_DURATION\"}")));
+    }
+
+    @Test
+    void testBulkStats_GroupedPerMachine() throws Exception {
+        Instant start = Instant.parse("2026-01-03T10:00:00Z");
+        Instant end = Instant.parse("2026-01-03T11:00:00Z");
+
+        sendBatch(List.of(
+                createEvent("B1", "M-001", 1000, 2, start.plus(1, ChronoUnit.MINUTES)),
+                createEvent("B2", "M-001", 1000, 3, start.plus(2, ChronoUnit.MINUTES)),
+                createEvent("B3", "M-002", 1000, 1, start.plus(3, ChronoUnit.MINUTES))));
+
+        MvcResult result = mockMvc.perform(get("/events/stats/bulk")
+                        .param("machineIds", "M-001", "M-002", "M-009")
+                        .param("start", start.toString())
+                        .param("end", end.toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].eventsCount").value(2))
+                .andExpect(jsonPath("$[0].defectsCount").value(5))
+                .andExpect(jsonPath("$[1].defectsCount").value(1))
+                .andExpect(jsonPath("$[2].eventsCount").value(0));
+    }
+
+    @Test
+    void testBinaryBatch_SameResponseAsJson() throws Exception {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        List<MachineEvent> events = List.of(
+                createEvent("BIN-1", "M-001", 1000, 2, now),
+                createEvent("BIN-2", "M-002", 1500, -1, now.minusSeconds(30)),
+                createEvent("BIN-3", "M-001", -5, 0, now));
+
+        mockMvc.perform(post("/events/batch")
+                        .contentType(BinaryBatchCodec.CONTENT_TYPE)
+                        .content(BinaryBatchCodec.encode(events)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.rejections[0].reason").value("INVALID_DURATION"));
+
+        // Re-sending the same events as JSON must dedupe against the binary ingest
+        sendBatch(events.subList(0, 2))
+                .andExpect(jsonPath("$.deduped").value(2));
+    }
+
+    @Test
+    void testBinaryBatch_MalformedOrOversizedBodiesAreClientErrors() throws Exception {
+        byte[] valid = BinaryBatchCodec.encode(List.of(
+                createEvent("BIN-BAD-1", "M-001", 1000, 0, Instant.now().truncatedTo(ChronoUnit.MILLIS))));
+
+        // Truncated mid-event, and a wrong magic
+        postBinary(Arrays.copyOf(valid, valid.length - 2)).andExpect(status().isBadRequest());
+        postBinary(new byte[]{'J', 'S', 'O', 'N', 0}).andExpect(status().isBadRequest());
+
+        // Nine bytes declaring Integer.MAX_VALUE machines: refused without allocating for them
+        postBinary(new byte[]{'B', 'Y', 'G', '1', (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07})
+                .andExpect(status().isContentTooLarge());
+
+        // durationMs of 2^32 (zigzag 2^33) does not fit an int and must not wrap to 0
+        postBinary(new byte[]{'B', 'Y', 'G', '1', 1, 5, 'M', '-', '0', '0', '1', 1, 1, 'X', 0, 0,
+                (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x20, 0})
+                .andExpect(status().isBadRequest());
+        assertEquals(0, repository.count());
+    }
+
+    @Test
+    void testDefectSeries_BucketsWithEdges() throws Exception {
+        Instant base = Instant.parse("2026-01-04T10:00:00Z");
+
+        sendBatch(List.of(
+                createEvent("S1", "M-SERIES", 1000, 2, base.plusSeconds(10)),   // partial first minute
+                createEvent("S2", "M-SERIES", 1000, 3, base.plusSeconds(400)),  // bucket 1 (5m)
+                createEvent("S3", "M-SERIES", 1000, -1, base.plusSeconds(700)), // bucket 2, defects ignored
+                createEvent("S4", "M-SERIES", 1000, 4, base.plusSeconds(905)))); // partial last minute
+
+        MvcResult result = mockMvc.perform(get("/events/stats/series")
+                        .param("machineId", "M-SERIES")
+                        .param("from", base.plusSeconds(5).toString())
+                        .param("to", base.plusSeconds(910).toString())
+                        .param("interval", "5m"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(4))
+                .andExpect(jsonPath("$[0].bucketStart").value(base.toString()))
+                .andExpect(jsonPath("$[0].defectsCount").value(2))
+                .andExpect(jsonPath("$[1].defectsCount").value(3))
+                .andExpect(jsonPath("$[2].eventsCount").value(1))
+                .andExpect(jsonPath("$[2].defectsCount").value(0))
+                .andExpect(jsonPath("$[3].defectsCount").value(4));
+    }
+
+    @Test
+    void testExport_NdjsonWritesOneRecordPerLine() throws Exception {
+        Instant base = Instant.parse("2026-01-05T12:00:00Z");
+
+        sendBatch(List.of(
+                createEvent("N1", "M-NDJSON", 1000, 1, base.plusSeconds(10)),
+                createEvent("N2", "M-NDJSON", 2000, 2, base.plusSeconds(20))));
+
+        MvcResult result = mockMvc.perform(get("/events/export")
+                        .param("machineId", "M-NDJSON")
+                        .param("from", base.toString())
+                        .param("to", base.plusSeconds(60).toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", containsString("application/x-ndjson")))
+                .andReturn().getResponse().getContentAsString();
+
+        // The application mapper indents (INDENT_OUTPUT), export rows must not
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        MachineEvent first = objectMapper.readValue(lines[0], MachineEvent.class);
+        MachineEvent second = objectMapper.readValue(lines[1], MachineEvent.class);
+        assertEquals("N1", first.getEventId());
+        assertEquals(1, first.getDefectCount());
+        assertEquals("N2", second.getEventId());
+        assertEquals(2000, second.getDurationMs());
+    }
+
+    @Test
+    void testExport_CsvStreamsWindowRows() throws Exception {
+        Instant base = Instant.parse("2026-01-05T10:00:00Z");
+
+        sendBatch(List.of(
+                createEvent("X1", "M-EXPORT", 1000, 1, base.plusSeconds(10)),
+                createEvent("X2", "M-EXPORT", 1000, 2, base.plusSeconds(20)),
+                createEvent("X3", "M-EXPORT", 1000, 3, base.plusSeconds(3600)))); // outside window
+
+        MvcResult result = mockMvc.perform(get("/events/export")
+                        .param("machineId", "M-EXPORT")
+                        .param("from", base.toString())
+                        .param("to", base.plusSeconds(60).toString())
+                        .param("format", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("eventId,"));
+        assertTrue(lines[1].startsWith("X1,M-EXPORT,"));
+        assertTrue(lines[2].startsWith("X2,M-EXPORT,"));
+    }
+
+    @Test
+    void testHotStore_MatchesDatabaseAfterCorrections() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        Instant start = now.minus(1, ChronoUnit.HOURS);
+        Instant end = now.plusSeconds(1);
+
+        eventService.processBatch(List.of(
+                createEvent("H1", "M-001", 1000, 3, now.minusSeconds(60)),
+                createEvent("H2", "M-001", 1000, -1, now.minusSeconds(30)),
+                createEvent("H3", "M-002", 1000, 2, now.minusSeconds(10))));
+        // Correction: H1 moves to M-002 with more defects
+        eventService.processBatch(List.of(createEvent("H1", "M-002", 1000, 7, now.minusSeconds(60))));
+
+        long[] hot = hotEventStore.machineTotals("M-002", start, end);
+        Object[] db = repository.getStatsData("M-002", start, end).getFirst();
+        assertEquals(((Number) db[0]).longValue(), hot[0]);
+        assertEquals(((Number) db[1]).longValue(), hot[1]);
+        assertEquals(2, hot[0]);
+        assertEquals(9, hot[1]);
+
+        List<Object[]> lines = hotEventStore.lineTotals("F01", start, end, DefectRanking.TOTAL_DEFECTS, 5);
+        assertEquals(1, lines.size());
+        assertEquals(3L, lines.getFirst()[2]);
+
+        // Windows older than the covered range go to the database
+        assertNull(hotEventStore.machineTotals("M-002", now.minus(30, ChronoUnit.DAYS), end));
+    }
+
+    @Test
+    void testEventLog_ReplaysLatestVersionsAfterCompaction(@TempDir Path dir) throws Exception {
+        Instant now = Instant.now();
+        MachineEvent first = createEvent("LOG-1", "M-001", 1000, 1, now);
+        MachineEvent second = createEvent("LOG-2", "M-002", 1000, 2, now);
+        MachineEvent corrected = createEvent("LOG-1", "M-001", 1000, 9, now);
+        for (MachineEvent e : List.of(first, second, corrected)) {
+            e.setReceivedTime(now);
+        }
+
+        // Tiny segments: every record rolls to a new file
+        try (EventLog eventLog = new EventLog(dir, 64, 100, 0)) {
+            eventLog.append(List.of(first, second)).join();
+            eventLog.append(List.of(corrected)).join();
+        }
+
+        Map<String, MachineEvent> replayed = new HashMap<>();
+        try (EventLog eventLog = new EventLog(dir, 64, 100, 0)) {
+            eventLog.compact();
+            // Both live events no longer fit one 64-byte segment: one output per input + new active segment
+            assertEquals(3, eventLog.segmentCount());
+            eventLog.replay(batch -> batch.forEach(e -> replayed.put(e.getEventId(), e)));
+        }
+
+        assertEquals(2, replayed.size());
+        assertEquals(9, replayed.get("LOG-1").getDefectCount());
+        assertEquals(now, replayed.get("LOG-2").getEventTime());
+    }
+
+    @Test
+    void testEventLog_SkipsAbortedRecordsAndCapsCompactedSegments(@TempDir Path dir) throws Exception {
+        Instant now = Instant.now();
+        try (EventLog eventLog = new EventLog(dir, 250, 100, 0)) {
+            for (int i = 0; i < 6; i++) {
+                MachineEvent event = createEvent("CAP-" + i, "M-001", 1000, i, now);
+                event.setReceivedTime(now);
+                long recordId = eventLog.append(List.of(event)).join();
+                if (i == 3) {
+                    eventLog.abort(recordId).join(); // its transaction rolled back
+                } else {
+                    eventLog.commit(recordId);
+                }
+            }
+        }
+
+        Map<String, MachineEvent> replayed = new HashMap<>();
+        try (EventLog eventLog = new EventLog(dir, 250, 100, 0)) {
+            int before = eventLog.segmentCount();
+            eventLog.compact();
+            assertTrue(eventLog.segmentCount() < before, "small neighbouring segments are packed together");
+            try (Stream<Path> files = Files.list(dir)) {
+                files.forEach(f -> assertTrue(f.toFile().length() <= 250, f + " exceeds the segment size"));
+            }
+            eventLog.replay(batch -> batch.forEach(e -> replayed.put(e.getEventId(), e)));
+        }
+
+        assertEquals(5, replayed.size());
+        assertFalse(replayed.containsKey("CAP-3"));
+        assertEquals(5, replayed.get("CAP-5").getDefectCount());
+    }
+
+    @Test
+    void testRetention_DropsWholeDaysOnly() {
+        Instant dayOne = Instant.parse("2026-01-01T23:59:59Z");
+        Instant dayTwo = Instant.parse("2026-01-02T00:00:00Z");
+        eventService.processBatch(List.of(
+                createEvent("RET-1", "M-001", 1000, 4, dayOne),
+                createEvent("RET-2", "M-001", 1000, 6, dayTwo)));
+
+        assertEquals(1, retentionService.expireBefore(LocalDate.parse("2026-01-02")));
+
+        assertEquals(1, repository.count());
+        assertTrue(repository.existsById("RET-2"));
+        assertFalse(dayPartitions.days().contains(LocalDate.parse("2026-01-01")));
+        long[] expired = rollupRepository.machineTotals("M-001",
+                Instant.parse("2026-01-01T00:00:00Z"), Instant.parse("2026-01-02T00:00:00Z"));
+        assertEquals(0, expired[0]);
+        long[] kept = rollupRepository.machineTotals("M-001", dayTwo, dayTwo.plusSeconds(60));
+        assertEquals(6, kept[1]);
+    }
+
+    @Test
+    void testRetention_CorrectionMovesEventToItsNewDay() {
+        Instant dayOne = Instant.parse("2026-01-01T12:00:00Z");
+        Instant dayTwo = Instant.parse("2026-01-02T12:00:00Z");
+        eventService.processBatch(List.of(createEvent("MOVE-1", "M-001", 1000, 1, dayOne)));
+        eventService.processBatch(List.of(createEvent("MOVE-1", "M-001", 1000, 2, dayTwo)));
+
+        assertEquals(1, repository.count());
+        retentionService.expireBefore(LocalDate.parse("2026-01-02"));
+        assertEquals(2, repository.findById("MOVE-1").orElseThrow().getDefectCount());
+    }
+
+    @Test
+    void testRetention_ExpiresInMemoryViews() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        eventService.processBatch(List.of(createEvent("RET-HOT", "M-001", 1000, 5, now.minusSeconds(60))));
+        Instant start = now.minus(1, ChronoUnit.HOURS);
+        Instant end = now.plusSeconds(1);
+        assertEquals(1, hotEventStore.machineTotals("M-001", start, end)[0]);
+        assertFalse(heavyHitters.top("F01", start, end, 5).isEmpty());
+
+        // Expire today as well
+        retentionService.expireBefore(LocalDate.now(ZoneOffset.UTC).plusDays(1));
+
+        assertEquals(0, repository.count());
+        assertEquals(0, hotEventStore.machineTotals("M-001", start, end)[0]);
+        assertTrue(heavyHitters.top("F01", start, end, 5).isEmpty());
+        assertEquals(0, statusMonitor.snapshot("M-001").get(0).getEventsCount());
+    }
+
+    @Test
+    void testShards_ShardLocalDedupeAndMergedTotals() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        List<String> urls = List.of("jdbc:h2:mem:test_shard_0;DB_CLOSE_DELAY=-1",
+                "jdbc:h2:mem:test_shard_1;DB_CLOSE_DELAY=-1", "jdbc:h2:mem:test_shard_2;DB_CLOSE_DELAY=-1");
+
+        try (EventShards shards = new EventShards(urls, 1000)) {
+            List<MachineEvent> batch = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                batch.add(shardEvent("SH-" + i, "M-" + (i % 12), i % 2 == 0 ? "LINE-A" : "LINE-B", 1, now));
+            }
+            shards.write(split(shards, batch));
+
+            // Resend: one event unchanged, one corrected
+            EventShards.ShardWrite[] second = shards.write(split(shards, List.of(
+                    shardEvent("SH-0", "M-0", "LINE-A", 1, now),
+                    shardEvent("SH-1", "M-1", "LINE-B", 5, now))));
+            int deduped = 0;
+            int updated = 0;
+            for (EventShards.ShardWrite write : second) {
+                for (byte outcome : write.outcomes()) {
+                    deduped += (outcome == EventShards.DEDUPED) ? 1 : 0;
+                    updated += (outcome == EventShards.UPDATED) ? 1 : 0;
+                }
+            }
+            assertEquals(1, deduped);
+            assertEquals(1, updated);
+
+            List<Object[]> lines = shards.lineTotals("F-SH", now.minusSeconds(1), now.plusSeconds(1),
+                    DefectRanking.TOTAL_DEFECTS, 5);
+            assertEquals("LINE-B", lines.getFirst()[0]);
+            assertEquals(34L, lines.getFirst()[1]); // 30 events x 1, SH-1 corrected to 5
+            assertEquals(30L, lines.getFirst()[2]);
+            assertEquals(30L, lines.get(1)[1]);
+
+            // A correction that moves SH-2 to another machine replaces the stored row instead of adding one
+            shards.write(split(shards, List.of(shardEvent("SH-2", "M-5", "LINE-A", 1, now))));
+            assertEquals(4, shards.machineTotals("M-2", now.minusSeconds(1), now.plusSeconds(1))[0]);
+            assertEquals(6, shards.machineTotals("M-5", now.minusSeconds(1), now.plusSeconds(1))[0]);
+            List<Object[]> lineA = shards.totalsByLine("LINE-A", now.minusSeconds(1), now.plusSeconds(1));
+            assertEquals(6, lineA.size()); // one merged row per machine
+            assertEquals(30L, lineA.stream().mapToLong(row -> (long) row[1]).sum());
+        }
+    }
+
+    @Test
+    void testShards_PartialFailureReturnsCommittedWrites() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        List<String> urls = List.of("jdbc:h2:mem:test_partial_0;DB_CLOSE_DELAY=-1",
+                "jdbc:h2:mem:test_partial_1;DB_CLOSE_DELAY=-1");
+
+        try (EventShards shards = new EventShards(urls, 1000)) {
+            MachineEvent broken = shardEvent("SH-P-BAD", "M-1", "LINE-A", 1, now);
+            broken.setMachineId(null); // violates NOT NULL on its shard only
+            List<List<MachineEvent>> perShard = List.of(
+                    List.of(shardEvent("SH-P-OK", "M-0", "LINE-A", 2, now)), List.of(broken));
+
+            EventShards.PartialWriteException e = assertThrows(EventShards.PartialWriteException.class,
+                    () -> shards.write(perShard));
+            assertNull(e.committed()[1]);
+            assertEquals(List.of("SH-P-OK"), e.committed()[0].saved().stream().map(MachineEvent::getEventId).toList());
+            assertEquals(1, shards.machineTotals("M-0", now.minusSeconds(1), now.plusSeconds(1))[0]);
+        }
+    }
+
+    private MachineEvent shardEvent(String id, String machineId, String lineId, int defects, Instant time) {
+        MachineEvent event = createEvent(id, machineId, 1000, defects, time);
+        event.setLineId(lineId);
+        event.setFactoryId("F-SH");
+        event.setReceivedTime(time);
+        event.setPayloadHash(PayloadHasher.hash(event));
+        return event;
+    }
+
+    private static List<List<MachineEvent>> split(EventShards shards, List<MachineEvent> events) {
+        List<List<MachineEvent>> perShard = new ArrayList<>();
+        for (int s = 0; s < shards.size(); s++) {
+            perShard.add(new ArrayList<>());
+        }
+        events.forEach(e -> perShard.get(shards.shardOf(e.getEventId())).add(e));
+        return perShard;
+    }
+
+    @Test
+    void testStatusStream_PushesThresholdCrossingsAndCorrections() throws Exception {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        MvcResult stream = mockMvc.perform(get("/status/stream").param("machineId", "M-SSE"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertTrue(awaitContent(stream, "Healthy", 1), "snapshot on connect");
+
+        // 3 defects in a 60 minute window = 3.0/h -> Warning
+        eventService.processBatch(List.of(createEvent("SSE-1", "M-SSE", 1000, 3, now.minusSeconds(30))));
+        assertTrue(awaitContent(stream, "Warning", 1), "pushed on crossing the threshold");
+
+        // Correcting the event to 0 defects must remove its old contribution
+        eventService.processBatch(List.of(createEvent("SSE-1", "M-SSE", 1000, 0, now.minusSeconds(30))));
+        assertTrue(awaitContent(stream, "Healthy", 2), "pushed after the correction");
+    }
+
+    @Test
+    void testStatusMonitor_SlowSubscriberDoesNotHoldUpOthers() throws Exception {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable slow = statusMonitor.subscribe("M-SLOW", event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, () -> { });
+        List<String> seen = new CopyOnWriteArrayList<>();
+        Runnable fast = statusMonitor.subscribe("M-SLOW", event -> seen.add(event.getStatus()), () -> { });
+
+        try {
+            eventService.processBatch(List.of(createEvent("SLOW-1", "M-SLOW", 1000, 3, now.minusSeconds(30))));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!seen.contains("Warning") && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(List.of("Healthy", "Warning"), seen); // snapshot first, then the change
+        } finally {
+            release.countDown();
+            slow.run();
+            fast.run();
+        }
+    }
+
+    @Test
+    void testTopDefectLines_RankingByTotalAndPercent() throws Exception {
+        Instant t = Instant.parse("2026-01-05T10:10:00Z");
+        List<MachineEvent> events = new ArrayList<>();
+        for (int i = 0; i < 10; i++) { // LINE-01: 6 defects in 10 events = 60%
+            events.add(createEvent("RANK-A" + i, "M-001", 1000, i < 6 ? 1 : 0, t));
+        }
+        events.add(createEvent("RANK-B1", "M-500", 1000, 2, t)); // LINE-02 (default): 4 in 2 = 200%
+        events.add(createEvent("RANK-B2", "M-500", 1000, 2, t));
+        sendBatch(events).andExpect(status().isOk());
+
+        String from = "2026-01-05T10:00:00Z";
+        String to = "2026-01-05T11:00:00Z";
+        mockMvc.perform(get("/events/stats/top-defect-lines")
+                        .param("factoryId", "F01").param("from", from).param("to", to))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].lineId", contains("LINE-01", "LINE-02")));
+        mockMvc.perform(get("/events/stats/top-defect-lines")
+                        .param("factoryId", "F01").param("from", from).param("to", to)
+                        .param("orderBy", "defectsPercent"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].lineId", contains("LINE-02", "LINE-01")))
+                .andExpect(jsonPath("$[0].defectsPercent").value(200.0))
+                .andExpect(jsonPath("$[1].defectsPercent").value(60.0));
+        mockMvc.perform(get("/events/stats/top-defect-lines")
+                        .param("factoryId", "F01").param("from", from).param("to", to)
+                        .param("orderBy", "bogus"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testTopDefectMachines_EstimatesFollowCorrections() throws Exception {
+        // Machine IDs of their own, as the sketches are not cleared between tests
+        Instant hour = Instant.now().minus(2, ChronoUnit.HOURS).truncatedTo(ChronoUnit.HOURS);
+        Instant t = hour.plus(10, ChronoUnit.MINUTES);
+        sendBatch(List.of(createEvent("HH-A1", "M-HH-A", 1000, 3, t),
+                createEvent("HH-A2", "M-HH-A", 1000, 3, t),
+                createEvent("HH-B1", "M-HH-B", 1000, 2, t)))
+                .andExpect(status().isOk());
+
+        // Raise B's defects from 2 to 7 and lower one of A's from 3 to 0
+        sendBatch(List.of(createEvent("HH-B1", "M-HH-B", 1000, 7, t),
+                createEvent("HH-A2", "M-HH-A", 1000, 0, t)))
+                .andExpect(jsonPath("$.updated").value(2));
+
+        mockMvc.perform(get("/events/stats/top-defect-machines")
+                        .param("factoryId", "F01")
+                        .param("from", hour.toString())
+                        .param("to", hour.plus(1, ChronoUnit.HOURS).toString())
+                        .param("limit", "50"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.machineId == 'M-HH-B')].estimatedDefects", contains(7)))
+                .andExpect(jsonPath("$[?(@.machineId == 'M-HH-A')].estimatedDefects", contains(3)));
+    }
+
+    @Test
+    void testTopDefectMachines_RejectsWindowBeyondRetention() throws Exception {
+        Instant now = Instant.now();
+        mockMvc.perform(get("/events/stats/top-defect-machines")
+                        .param("factoryId", "F01")
+                        .param("from", now.minus(200, ChronoUnit.HOURS).toString())
+                        .param("to", now.toString()))
+                .andExpect(status().isBadRequest());
+    }
+
+    // Polls the streamed body until `text` appears `times` times
+    private static boolean awaitContent(MvcResult result, String text, int times) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            String body = result.getResponse().getContentAsString();
+            if (body.split(text, -1).length - 1 >= times) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+
+    /**
+     * Allocation regression guard for the per-event loop of processBatch
+     * (EventService.classify: validation, topology lookup, hashing, the pending
+     * map, summaries and metrics). Duplicates must not allocate at all; an
+     * event that is written may only cost its pending-map entry.
+     */
+    @Test
+    void testHotPath_AllocationFree() {
+        Instant now = Instant.now();
+        Instant futureLimit = now.plus(15, ChronoUnit.MINUTES);
+
+        List<MachineEvent> events = new ArrayList<>(1024);
+        for (int i = 0; i < 1024; i++) {
+            events.add(createEvent("ALLOC-" + i, String.format("M-%03d", i % 20), 1000 + i, i % 4, now));
+        }
+        List<BatchResponse> summaries = Collections.nCopies(events.size(), new BatchResponse());
+        Map<String, MachineEvent> pending = LinkedHashMap.newLinkedHashMap(events.size());
+
+        // One pass computes the payload hashes the stored fingerprints are built from
+        eventService.classify(events, summaries, Map.of(), pending, now, futureLimit);
+        Map<String, EventFingerprint> identical = HashMap.newHashMap(events.size());
+        Map<String, EventFingerprint> changed = HashMap.newHashMap(events.size());
+        for (MachineEvent event : events) {
+            identical.put(event.getEventId(), new EventFingerprint(event.getEventId(), event.getPayloadHash()));
+            changed.put(event.getEventId(), new EventFingerprint(event.getEventId(), event.getPayloadHash() + 1));
+        }
+
+        long deduped = allocatedByClassify(events, summaries, identical, pending, now, futureLimit);
+        assertEquals(0, pending.size());
+        assertTrue(deduped < 64 * 1024, "Deduping 100k events allocated " + deduped + " bytes");
+
+        long updated = allocatedByClassify(events, summaries, changed, pending, now, futureLimit);
+        assertEquals(events.size(), pending.size());
+        long perEvent = updated / (100L * events.size());
+        assertTrue(perEvent <= 48, "Updating allocated " + perEvent + " bytes per event beyond its map entry");
+    }
+
+    // Bytes allocated by 100 classify passes over `events`, measured after 200 warm-up passes
+    private long allocatedByClassify(List<MachineEvent> events, List<BatchResponse> summaries,
+                                     Map<String, EventFingerprint> existing, Map<String, MachineEvent> pending,
+                                     Instant now, Instant futureLimit) {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < 200; i++) { // warm-up so JIT has compiled the path
+            pending.clear();
+            eventService.classify(events, summaries, existing, pending, now, futureLimit);
+        }
+        long before = threadBean.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100; i++) {
+            pending.clear();
+            eventService.classify(events, summaries, existing, pending, now, futureLimit);
+        }
+        return threadBean.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    /**
+     * Async mode (202 + ticket) with a writer that is held inside processBatch
+     * until released, so the queue can be filled deterministically.
+     */
+    @Nested
+    @TestPropertySource(properties = {
+            "buyogo.ingest.async.enabled=true",
+            "buyogo.ingest.async.queue-capacity=2"})
+    class AsyncIngest {
+
+        @MockitoSpyBean
+        private EventService spiedService;
+
+        @Test
+        void testAsync_QueueFullGets503AndFailuresStayWithTheirTicket() throws Exception {
+            Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+            CountDownLatch writerEntered = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            doAnswer(invocation -> {
+                List<MachineEvent> events = invocation.getArgument(0);
+                writerEntered.countDown();
+                assertTrue(release.await(10, TimeUnit.SECONDS));
+                if (events.stream().anyMatch(e -> e.getEventId().equals("ASYNC-BAD"))) {
+                    throw new IllegalStateException("simulated write failure");
+                }
+                return invocation.callRealMethod();
+            }).when(spiedService).processBatch(anyList(), anyList());
+
+            String first = submit(List.of(createEvent("ASYNC-1", "M-001", 1000, 0, now)));
+            assertTrue(writerEntered.await(5, TimeUnit.SECONDS));
+            // The writer is busy with `first`; these two fill the queue and are later coalesced
+            String failing = submit(List.of(createEvent("ASYNC-BAD", "M-001", 1000, 0, now),
+                    createEvent("ASYNC-BAD-2", "M-001", 1000, 0, now)));
+            String healthy = submit(List.of(createEvent("ASYNC-2", "M-001", 1000, 0, now),
+                    createEvent("ASYNC-3", "M-001", -5, 0, now)));
+
+            sendBatch(List.of(createEvent("ASYNC-4", "M-001", 1000, 0, now)))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().exists("Retry-After"));
+
+            release.countDown();
+            awaitTicket(first).andExpect(jsonPath("$.status").value("DONE"))
+                    .andExpect(jsonPath("$.result.accepted").value(1));
+            awaitTicket(failing).andExpect(jsonPath("$.status").value("FAILED"))
+                    .andExpect(jsonPath("$.result.accepted").value(0));
+            awaitTicket(healthy).andExpect(jsonPath("$.status").value("DONE"))
+                    .andExpect(jsonPath("$.result.accepted").value(1))
+                    .andExpect(jsonPath("$.result.rejected").value(1));
+            assertEquals(2, repository.count());
+
+            mockMvc.perform(get("/events/batch/{ticketId}", "no-such-ticket"))
+                    .andExpect(status().isNotFound());
+        }
+
+        private String submit(List<MachineEvent> events) throws Exception {
+            MvcResult result = sendBatch(events)
+                    .andExpect(status().isAccepted())
+                    .andExpect(jsonPath("$.status").value("QUEUED"))
+                    .andReturn();
+            return (String) objectMapper.readValue(result.getResponse().getContentAsString(), Map.class)
+                    .get("ticketId");
+        }
+
+        private org.springframework.test.web.servlet.ResultActions awaitTicket(String ticketId) throws Exception {
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (true) {
+                org.springframework.test.web.servlet.ResultActions poll =
+                        mockMvc.perform(get("/events/batch/{ticketId}", ticketId)).andExpect(status().isOk());
+                String body = poll.andReturn().getResponse().getContentAsString();
+                if (!body.contains("QUEUED") || System.currentTimeMillis() > deadline) {
+                    return poll;
+                }
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    /**
+     * A hot store of eight rows, so eviction runs after a handful of events.
+     */
+    @Nested
+    @TestPropertySource(properties = "buyogo.hot-store.max-rows=8")
+    class HotStoreEviction {
+
+        @Test
+        void testHotStore_EvictsRowsSharingOneTimestamp() throws Exception {
+            Instant time = Instant.now().minusSeconds(600).truncatedTo(ChronoUnit.MILLIS);
+            List<MachineEvent> sameTime = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                sameTime.add(createEvent("EVICT-" + i, "M-001", 1000, 1, time));
+            }
+            sendBatch(sameTime).andExpect(status().isOk());
+
+            // The store is full of rows at the oldest timestamp; they must all go, not none
+            sendBatch(List.of(createEvent("EVICT-8", "M-001", 1000, 1, time),
+                    createEvent("EVICT-9", "M-001", 1000, 1, time.plusSeconds(1))))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.accepted").value(2));
+
+            // Windows from before the eviction go to the database, later ones are served from the store
+            assertNull(hotEventStore.machineTotals("M-001", time, time.plusSeconds(60)));
+            long[] recent = hotEventStore.machineTotals("M-001", time.plusSeconds(1), time.plusSeconds(60));
+            assertEquals(1, recent[0]);
+            mockMvc.perform(get("/events/stats")
+                            .param("machineId", "M-001")
+                            .param("start", time.toString())
+                            .param("end", time.plusSeconds(60).toString()))
+                    .andExpect(jsonPath("$.eventsCount").value(10));
+        }
+    }
+
+    @Nested
+    @TestPropertySource(properties = {
+            "buyogo.sharding.shards=2",
+            "buyogo.sharding.url-template=jdbc:h2:mem:test_sharded_app_%d;DB_CLOSE_DELAY=-1"})
+    class Sharding {
+
+        @Test
+        void testSharding_ExportAndWarmUpReadEveryShard() throws Exception {
+            Instant base = Instant.now().minusSeconds(600).truncatedTo(ChronoUnit.MILLIS);
+            List<MachineEvent> events = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                events.add(createEvent("SHX-" + i, "M-001", 1000, 1, base.plusSeconds(i)));
+            }
+            sendBatch(events).andExpect(jsonPath("$.accepted").value(6));
+
+            MvcResult result = mockMvc.perform(get("/events/export")
+                            .param("machineId", "M-001")
+                            .param("from", base.toString())
+                            .param("to", base.plusSeconds(60).toString())
+                            .param("format", "csv"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            String body = mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+
+            // Rows of both shards, merged back into event-time order
+            String[] lines = body.split("\n");
+            assertEquals(7, lines.length);
+            for (int i = 0; i < 6; i++) {
+                assertTrue(lines[i + 1].startsWith("SHX-" + i + ","));
+            }
+
+            // A restart's warm-up reads the shards, not the unused primary table
+            hotEventStore.clear();
+            hotEventStore.warmUp();
+            assertEquals(6, hotEventStore.machineTotals("M-001", base, base.plusSeconds(60))[0]);
+        }
+    }
+
+    /**
+     * Tight admission limits, with X-Client-Id believed only from the MockMvc
+     * remote address (127.0.0.1).
+     */
+    @Nested
+    @TestPropertySource(properties = {
+            "buyogo.admission.max-events=100",
+            "buyogo.admission.client-rate=1",
+            "buyogo.admission.client-burst=50",
+            "buyogo.admission.trusted-proxies=127.0.0.1"})
+    class Admission {
+
+        @Test
+        void testAdmission_RejectsOversizedBatchesAndThrottlesClients() throws Exception {
+            Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+            List<MachineEvent> oversized = new ArrayList<>();
+            for (int i = 0; i < 101; i++) {
+                oversized.add(createEvent("ADM-" + i, "M-001", 1000, 0, now));
+            }
+            mockMvc.perform(post("/events/batch").header("X-Client-Id", "adm-a")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(oversized)))
+                    .andExpect(status().isContentTooLarge());
+
+            // One batch may overdraw the bucket; the next request from that client is refused
+            String large = objectMapper.writeValueAsString(oversized.subList(0, 60));
+            String single = objectMapper.writeValueAsString(List.of(createEvent("ADM-X", "M-001", 1000, 0, now)));
+            mockMvc.perform(post("/events/batch").header("X-Client-Id", "adm-b")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(large))
+                    .andExpect(status().isOk());
+            mockMvc.perform(post("/events/batch").header("X-Client-Id", "adm-b")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(single))
+                    .andExpect(status().isTooManyRequests())
+                    .andExpect(header().exists("Retry-After"));
+
+            // Other clients are unaffected
+            mockMvc.perform(post("/events/batch").header("X-Client-Id", "adm-c")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(single))
+                    .andExpect(status().isOk());
+        }
+
+        @Test
+        void testAdmission_ClientHeaderIgnoredFromUntrustedAddresses() throws Exception {
+            Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+            List<MachineEvent> large = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                large.add(createEvent("ROT-" + i, "M-001", 1000, 0, now));
+            }
+            mockMvc.perform(post("/events/batch").header("X-Client-Id", "rot-1")
+                            .with(request -> {
+                                request.setRemoteAddr("10.0.0.9");
+                                return request;
+                            })
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(large)))
+                    .andExpect(status().isOk());
+
+            // A new id from the same untrusted address shares its bucket instead of getting a fresh burst
+            mockMvc.perform(post("/events/batch").header("X-Client-Id", "rot-2")
+                            .with(request -> {
+                                request.setRemoteAddr("10.0.0.9");
+                                return request;
+                            })
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(List.of(createEvent("ROT-X", "M-001", 1000, 0, now)))))
+                    .andExpect(status().isTooManyRequests());
+        }
+
+        @Test
+        void testAdmission_BodyBytesCountedAsRead() {
+            // Whatever the declared length, reading past max-bytes fails with 413's exception
+            MockHttpServletRequest request = new MockHttpServletRequest("POST", "/events/batch");
+            request.setContent(new byte[32]);
+            AdmissionBodyLimitFilter filter = new AdmissionBodyLimitFilter(16);
+            assertThrows(BatchTooLargeException.class, () -> filter.doFilter(request, new MockHttpServletResponse(),
+                    (req, res) -> req.getInputStream().readAllBytes()));
+        }
+    }
+
+    /**
+     * Virtual-thread mode with a single request-gate permit, so a request that
+     * still holds it (a streamed export) makes the next one time out.
+     */
+    @Nested
+    @TestPropertySource(properties = {
+            "spring.threads.virtual.enabled=true",
+            "buyogo.jdbc.max-concurrent=1",
+            "buyogo.jdbc.acquire-timeout-ms=100"})
+    class RequestGate {
+
+        @Test
+        void testRequestGate_PermitsReturnedAndHeldUntilExportCompletes() throws Exception {
+            Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+            // With one permit every request after the first would 503 if a permit leaked
+            for (int i = 0; i < 3; i++) {
+                sendBatch(List.of(createEvent("GATE-" + i, "M-GATE", 1000, 0, now)))
+                        .andExpect(status().isOk());
+                mockMvc.perform(get("/events/stats")
+                                .param("machineId", "M-GATE")
+                                .param("start", now.minusSeconds(60).toString())
+                                .param("end", now.plusSeconds(60).toString()))
+                        .andExpect(status().isOk());
+            }
+
+            // The export reads its cursor on the async thread, so its permit outlives the handler
+            MvcResult export = mockMvc.perform(get("/events/export")
+                            .param("machineId", "M-GATE")
+                            .param("from", now.minusSeconds(60).toString())
+                            .param("to", now.plusSeconds(60).toString())
+                            .param("format", "csv"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            sendBatch(List.of(createEvent("GATE-WAIT", "M-GATE", 1000, 0, now)))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "1"));
+
+            String rows = mockMvc.perform(asyncDispatch(export))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            assertEquals(4, rows.split("\n").length); // header + GATE-0..2
+            sendBatch(List.of(createEvent("GATE-WAIT", "M-GATE", 1000, 0, now)))
+                    .andExpect(status().isOk());
+        }
+    }
+
+    /**
+     * REJECT policy with a topology file the test rewrites, to cover the CSV
+     * mapping and POST /topology/reload.
+     */
+    @Nested
+    @TestPropertySource(properties = "buyogo.topology.unknown-machine=REJECT")
+    class TopologyFromFile {
+
+        private static final Path TOPOLOGY = writeTopology(null, "M-100,LINE-07,F02");
+
+        @DynamicPropertySource
+        static void topologyLocation(DynamicPropertyRegistry registry) {
+            registry.add("buyogo.topology.location", () -> TOPOLOGY.toUri().toString());
+        }
+
+        @Test
+        void testTopology_CsvMappingRejectPolicyAndReload() throws Exception {
+            Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+            writeTopology(TOPOLOGY, "M-100,LINE-07,F02");
+            mockMvc.perform(post("/topology/reload"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.machines").value(1));
+
+            sendBatch(List.of(createEvent("TOPO-1", "M-100", 1000, 0, now),
+                    createEvent("TOPO-2", "M-200", 1000, 0, now)))
+                    .andExpect(jsonPath("$.accepted").value(1))
+                    .andExpect(jsonPath("$.rejected").value(1))
+                    .andExpect(jsonPath("$.rejections[0].eventId").value("TOPO-2"))
+                    .andExpect(jsonPath("$.rejections[0].reason").value("UNKNOWN_MACHINE"));
+            MachineEvent stored = repository.findById("TOPO-1").orElseThrow();
+            assertEquals("LINE-07", stored.getLineId());
+            assertEquals("F02", stored.getFactoryId());
+
+            // M-200 is placed once the file lists it and is reloaded
+            writeTopology(TOPOLOGY, "M-100,LINE-07,F02\nM-200,LINE-08,F02");
+            mockMvc.perform(post("/topology/reload"))
+                    .andExpect(jsonPath("$.machines").value(2));
+            sendBatch(List.of(createEvent("TOPO-2", "M-200", 1000, 0, now)))
+                    .andExpect(jsonPath("$.accepted").value(1));
+            assertEquals("LINE-08", repository.findById("TOPO-2").orElseThrow().getLineId());
+        }
+    }
+
+    // Writes a topology CSV to `file`, or to a new temp file when null
+    private static Path writeTopology(Path file, String rows) {
+        try {
+            Path target = (file != null) ? file : Files.createTempFile("topology", ".csv");
+            Files.writeString(target, "# machineId,lineId,factoryId\n" + rows + "\n");
+            return target;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     // Helper method to keep code clean
     private MachineEvent createEvent(String id, String mid, int dur, int defects, Instant time) {
         return MachineEvent.builder()
@@ -184,6 +1289,12 @@ class BuyogoApplicationTests {
                 .defectCount(defects).eventTime(time).build();
     }
 
+    private org.springframework.test.web.servlet.ResultActions postBinary(byte[] body) throws Exception {
+        return mockMvc.perform(post("/events/batch")
+                .contentType(BinaryBatchCodec.CONTENT_TYPE)
+                .content(body));
+    }
+
     private org.springframework.test.web.servlet.ResultActions sendBatch(List<MachineEvent> events) throws Exception {
         return mockMvc.perform(post("/events/batch")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -0,0 +1,162 @@
+package com.AyushToCode.Buyogo.benchmark;
+
+import com.AyushToCode.Buyogo.BuyogoApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Overload test for ingest admission control. Well-behaved gateways send small
+ * batches at a steady pace under their own X-Client-Id and honour Retry-After,
+ * while flooding clients share one id and post huge batches back to back.
+ * The application runs on a real port twice, with buyogo.admission.enabled
+ * false and then true, and the well-behaved clients' p50/p99/p999 are printed
+ * for both runs along with the status codes each group received.
+ *
+ * Run: mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=com.AyushToCode.Buyogo.benchmark.AdmissionLoadBenchmark [-Dexec.args="32 8 20"]
+ */
+public class AdmissionLoadBenchmark {
+
+    private static final int POLITE_BATCH = 50;
+    private static final long POLITE_PAUSE_MS = 20;
+    private static final int FLOOD_BATCH = 40_000;
+
+    public static void main(String[] args) throws Exception {
+        int politeClients = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int floodClients = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        for (boolean admission : new boolean[]{false, true}) {
+            run(admission, politeClients, floodClients, seconds);
+        }
+    }
+
+    private static void run(boolean admission, int politeClients, int floodClients, int seconds) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BuyogoApplication.class).run(
+                "--server.port=0",
+                "--buyogo.admission.enabled=" + admission,
+                // All clients connect from localhost, so X-Client-Id is trusted from there
+                "--buyogo.admission.trusted-proxies=127.0.0.1,0:0:0:0:0:0:0:1",
+                "--spring.datasource.url=jdbc:h2:mem:admission_" + admission + ";DB_CLOSE_DELAY=-1",
+                "--logging.level.root=WARN")) {
+
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            Map<Integer, AtomicLong> politeStatuses = new ConcurrentHashMap<>();
+            Map<Integer, AtomicLong> floodStatuses = new ConcurrentHashMap<>();
+            String floodBody = batchBody("FLOOD", 0, FLOOD_BATCH);
+
+            try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int c = 0; c < floodClients; c++) {
+                    pool.submit(() -> {
+                        // Ignores Retry-After and resends the same payload as fast as it can
+                        while (System.nanoTime() < deadline) {
+                            HttpResponse<Void> response = http.send(post(base, "flood", floodBody),
+                                    HttpResponse.BodyHandlers.discarding());
+                            count(floodStatuses, response.statusCode());
+                        }
+                        return null;
+                    });
+                }
+
+                List<Future<long[]>> futures = new ArrayList<>(politeClients);
+                for (int c = 0; c < politeClients; c++) {
+                    int client = c;
+                    futures.add(pool.submit(() -> {
+                        long[] samples = new long[1024];
+                        int n = 0;
+                        for (int seq = 0; System.nanoTime() < deadline; seq++) {
+                            HttpRequest request = post(base, "gw-" + client,
+                                    batchBody("GW-" + client, seq, POLITE_BATCH));
+                            long t0 = System.nanoTime();
+                            HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (n == samples.length) {
+                                samples = Arrays.copyOf(samples, n * 2);
+                            }
+                            samples[n++] = System.nanoTime() - t0;
+                            count(politeStatuses, response.statusCode());
+
+                            long pauseMs = response.headers().firstValueAsLong("Retry-After")
+                                    .orElse(0) * 1000;
+                            Thread.sleep(Math.max(POLITE_PAUSE_MS, pauseMs));
+                        }
+                        return Arrays.copyOf(samples, n);
+                    }));
+                }
+
+                List<long[]> perClient = new ArrayList<>();
+                int total = 0;
+                for (Future<long[]> f : futures) {
+                    long[] samples = f.get();
+                    perClient.add(samples);
+                    total += samples.length;
+                }
+                long[] all = new long[total];
+                int i = 0;
+                for (long[] samples : perClient) {
+                    System.arraycopy(samples, 0, all, i, samples.length);
+                    i += samples.length;
+                }
+                Arrays.sort(all);
+
+                System.out.printf("admission=%-5s polite requests=%d p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms%n",
+                        admission, all.length, percentile(all, 0.50), percentile(all, 0.99),
+                        percentile(all, 0.999), all[all.length - 1] / 1e6);
+                System.out.println("    polite statuses " + new TreeMap<>(politeStatuses));
+                System.out.println("    flood statuses  " + new TreeMap<>(floodStatuses));
+            }
+        }
+    }
+
+    private static HttpRequest post(String base, String client, String body) {
+        return HttpRequest.newBuilder(URI.create(base + "/events/batch"))
+                .header("Content-Type", "application/json")
+                .header("X-Client-Id", client)
+                .timeout(Duration.ofSeconds(60))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static String batchBody(String prefix, int seq, int size) {
+        StringBuilder body = new StringBuilder("[");
+        Instant now = Instant.now();
+        for (int e = 0; e < size; e++) {
+            if (e > 0) {
+                body.append(',');
+            }
+            body.append("{\"eventId\":\"").append(prefix).append('-').append(seq).append('-').append(e)
+                    .append("\",\"machineId\":\"M-").append(String.format("%03d", e % 300))
+                    .append("\",\"eventTime\":\"").append(now)
+                    .append("\",\"durationMs\":1000,\"defectCount\":").append(e % 3).append('}');
+        }
+        body.append(']');
+        return body.toString();
+    }
+
+    private static void count(Map<Integer, AtomicLong> statuses, int status) {
+        statuses.computeIfAbsent(status, s -> new AtomicLong()).incrementAndGet();
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
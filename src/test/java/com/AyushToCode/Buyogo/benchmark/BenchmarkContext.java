@@ -0,0 +1,36 @@
+package com.AyushToCode.Buyogo.benchmark;
+
+import com.AyushToCode.Buyogo.BuyogoApplication;
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Instant;
+
+/**
+ * Boots the application without the web layer on its own in-memory database,
+ * so benchmarks exercise the real service and repository beans.
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start(String dbName, String... extraArgs) {
+        String[] args = new String[extraArgs.length + 2];
+        args[0] = "--spring.datasource.url=jdbc:h2:mem:" + dbName + ";DB_CLOSE_DELAY=-1";
+        args[1] = "--logging.level.root=WARN";
+        System.arraycopy(extraArgs, 0, args, 2, extraArgs.length);
+
+        return new SpringApplicationBuilder(BuyogoApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args);
+    }
+
+    static MachineEvent event(String id, String machineId, int duration, int defects, Instant time) {
+        return MachineEvent.builder()
+                .eventId(id).machineId(machineId).durationMs(duration)
+                .defectCount(defects).eventTime(time).build();
+    }
+}
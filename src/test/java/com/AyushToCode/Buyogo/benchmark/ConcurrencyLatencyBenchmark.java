@@ -0,0 +1,142 @@
+package com.AyushToCode.Buyogo.benchmark;
+
+import com.AyushToCode.Buyogo.BuyogoApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares request latency of the classic platform-thread Tomcat pool against
+ * virtual-thread request handling (spring.threads.virtual.enabled) when
+ * `clients` gateways flush at the same moment. Only 2xx responses count as
+ * latency samples; 503s from the request gate and other errors are reported
+ * per status code next to the percentiles.
+ *
+ * Run: mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=com.AyushToCode.Buyogo.benchmark.ConcurrencyLatencyBenchmark [-Dexec.args="1000 20"]
+ *
+ * Not a JMH benchmark: the quantity of interest is the latency distribution
+ * seen by concurrent HTTP clients, not the cost of a single call.
+ */
+public class ConcurrencyLatencyBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int requestsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        for (boolean virtual : new boolean[]{false, true}) {
+            Map<Integer, AtomicLong> statuses = new ConcurrentHashMap<>();
+            long[] latencies = run(virtual, clients, requestsPerClient, statuses);
+            Arrays.sort(latencies);
+            String mode = virtual ? "virtual-threads" : "platform-pool";
+            if (latencies.length == 0) {
+                System.out.printf("%-16s clients=%d no successful requests%n", mode, clients);
+            } else {
+                System.out.printf("%-16s clients=%d ok=%d p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms%n",
+                        mode, clients, latencies.length, percentile(latencies, 0.50), percentile(latencies, 0.99),
+                        percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e6);
+            }
+            System.out.println("    statuses " + new TreeMap<>(statuses));
+        }
+    }
+
+    // Latencies of the 2xx responses; every status (2xx included) is counted into `statuses`
+    private static long[] run(boolean virtual, int clients, int requestsPerClient,
+                              Map<Integer, AtomicLong> statuses) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BuyogoApplication.class).run(
+                "--server.port=0",
+                "--spring.threads.virtual.enabled=" + virtual,
+                "--spring.datasource.url=jdbc:h2:mem:latency_" + virtual + ";DB_CLOSE_DELAY=-1",
+                "--logging.level.root=WARN")) {
+
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+            CountDownLatch startGate = new CountDownLatch(1);
+
+            try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<long[]>> futures = new ArrayList<>(clients);
+                for (int c = 0; c < clients; c++) {
+                    int client = c;
+                    futures.add(pool.submit(() -> {
+                        long[] samples = new long[requestsPerClient];
+                        int n = 0;
+                        startGate.await();
+                        for (int r = 0; r < requestsPerClient; r++) {
+                            HttpRequest request = (r % 2 == 0)
+                                    ? batchRequest(base, client, r)
+                                    : statsRequest(base, client);
+                            long t0 = System.nanoTime();
+                            int status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                            long elapsed = System.nanoTime() - t0;
+                            statuses.computeIfAbsent(status, s -> new AtomicLong()).incrementAndGet();
+                            if (status / 100 == 2) {
+                                samples[n++] = elapsed;
+                            }
+                        }
+                        return Arrays.copyOf(samples, n);
+                    }));
+                }
+                startGate.countDown();
+
+                long[] all = new long[clients * requestsPerClient];
+                int i = 0;
+                for (Future<long[]> f : futures) {
+                    long[] samples = f.get();
+                    System.arraycopy(samples, 0, all, i, samples.length);
+                    i += samples.length;
+                }
+                return Arrays.copyOf(all, i);
+            }
+        }
+    }
+
+    private static HttpRequest batchRequest(String base, int client, int seq) {
+        StringBuilder body = new StringBuilder("[");
+        Instant now = Instant.now();
+        for (int e = 0; e < 10; e++) {
+            if (e > 0) {
+                body.append(',');
+            }
+            body.append("{\"eventId\":\"LAT-").append(client).append('-').append(seq).append('-').append(e)
+                    .append("\",\"machineId\":\"M-").append(String.format("%03d", client % 300))
+                    .append("\",\"eventTime\":\"").append(now)
+                    .append("\",\"durationMs\":1000,\"defectCount\":").append(e % 3).append('}');
+        }
+        body.append(']');
+        return HttpRequest.newBuilder(URI.create(base + "/events/batch"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+    }
+
+    private static HttpRequest statsRequest(String base, int client) {
+        Instant end = Instant.now();
+        Instant start = end.minus(Duration.ofHours(24));
+        return HttpRequest.newBuilder(URI.create(base + "/events/stats?machineId=M-"
+                        + String.format("%03d", client % 300) + "&start=" + start + "&end=" + end))
+                .GET()
+                .build();
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,80 @@
+package com.AyushToCode.Buyogo.benchmark;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.service.EventService;
+import com.AyushToCode.Buyogo.service.TopologyRegistry;
+import com.AyushToCode.Buyogo.utility.PayloadHasher;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-event hot-path pieces: fingerprinting an incoming event and comparing it
+ * with the stored hash through EventService.isIdentical, and the topology
+ * lookup behind enrichEventData.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnrichmentBenchmark {
+
+    private static final int MACHINES = 300;
+
+    private TopologyRegistry topology;
+    private MachineEvent[] events;
+    // Hash of the stored row for events[i]; every other one differs, as for an update
+    private long[] storedHashes;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        Map<String, TopologyRegistry.Placement> placements = new HashMap<>();
+        for (int i = 0; i < MACHINES; i++) {
+            placements.put(String.format("M-%03d", i),
+                    new TopologyRegistry.Placement("LINE-" + (i % 40), "F0" + (i % 3)));
+        }
+        topology = new TopologyRegistry(new DefaultResourceLoader());
+        topology.replace(placements);
+
+        events = new MachineEvent[1024];
+        Instant now = Instant.now();
+        for (int i = 0; i < events.length; i++) {
+            events[i] = BenchmarkContext.event("E-" + i, String.format("M-%03d", i % MACHINES), 1000 + i, i % 5, now);
+        }
+        storedHashes = new long[events.length];
+        for (int i = 0; i < events.length; i++) {
+            long hash = PayloadHasher.hash(events[i]);
+            storedHashes[i] = (i % 2 == 0) ? hash : hash + 1;
+        }
+    }
+
+    private MachineEvent next() {
+        return events[cursor++ & (events.length - 1)];
+    }
+
+    @Benchmark
+    public long payloadHash() {
+        return PayloadHasher.hash(next());
+    }
+
+    // What processBatch does per event that already exists: fingerprint it, then compare
+    @Benchmark
+    public boolean isIdentical() {
+        int i = cursor++ & (events.length - 1);
+        MachineEvent event = events[i];
+        event.setPayloadHash(PayloadHasher.hash(event));
+        return EventService.isIdentical(storedHashes[i], event);
+    }
+
+    @Benchmark
+    public TopologyRegistry.Placement enrichLookup() {
+        return topology.lookup(next().getMachineId());
+    }
+}
@@ -0,0 +1,175 @@
+package com.AyushToCode.Buyogo.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.SplittableRandom;
+
+/**
+ * Source of /events/batch bodies for LoadHarness. Either synthetic, with a
+ * seeded mix of new events, exact resends (deduped), corrected resends
+ * (updated) and invalid events (rejected) whose times are skewed back by up to
+ * skewSeconds so batches arrive out of order, or a recorded NDJSON file
+ * (e.g. the output of GET /events/export) replayed line by line. A looped
+ * replay resends the same IDs, so passes after the first are deduped.
+ *
+ * Thread-safe; nextBatch calls from several writers interleave.
+ */
+public abstract class EventDataset {
+
+    /** A /events/batch JSON array body and the number of events in it. */
+    public record Batch(String json, int events) {
+    }
+
+    /** Up to `size` events, or null once a replayed file is used up. */
+    public abstract Batch nextBatch(int size);
+
+    public abstract String describe();
+
+    public static EventDataset synthetic(int machines, double duplicateRatio, double updateRatio,
+                                         double rejectRatio, int skewSeconds, long seed) {
+        return new Synthetic(machines, duplicateRatio, updateRatio, rejectRatio, skewSeconds, seed);
+    }
+
+    public static EventDataset replay(Path ndjson, boolean loop) throws IOException {
+        return new Replay(ndjson, loop);
+    }
+
+    private static final class Synthetic extends EventDataset {
+        // Earlier events that resends are drawn from
+        private static final int HISTORY = 1 << 16;
+
+        private final int machines;
+        private final double duplicateRatio;
+        private final double updateRatio;
+        private final double rejectRatio;
+        private final long skewMillis;
+        private final SplittableRandom random;
+
+        private final long[] historyTimes = new long[HISTORY];
+        private final int[] historyMachines = new int[HISTORY];
+        private final int[] historyDurations = new int[HISTORY];
+        private final int[] historyDefects = new int[HISTORY];
+        private long sequence;
+        private long rejectSequence;
+
+        Synthetic(int machines, double duplicateRatio, double updateRatio, double rejectRatio,
+                  int skewSeconds, long seed) {
+            this.machines = machines;
+            this.duplicateRatio = duplicateRatio;
+            this.updateRatio = updateRatio;
+            this.rejectRatio = rejectRatio;
+            this.skewMillis = skewSeconds * 1000L;
+            this.random = new SplittableRandom(seed);
+        }
+
+        @Override
+        public synchronized Batch nextBatch(int size) {
+            long now = System.currentTimeMillis();
+            StringBuilder body = new StringBuilder(size * 128).append('[');
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    body.append(',');
+                }
+                double roll = random.nextDouble();
+                if (roll < rejectRatio) {
+                    // One of the two validation failures: negative duration or far-future time
+                    boolean future = random.nextBoolean();
+                    append(body, "LH-BAD-" + rejectSequence++, random.nextInt(machines),
+                            future ? now + 3_600_000 : now, future ? 1000 : -1, 0);
+                    continue;
+                }
+                roll -= rejectRatio;
+                if (sequence > 0 && roll < duplicateRatio + updateRatio) {
+                    long id = random.nextLong(Math.max(0, sequence - HISTORY), sequence);
+                    int slot = (int) (id & (HISTORY - 1));
+                    if (historyTimes[slot] != 0) {
+                        if (roll >= duplicateRatio) {
+                            historyDefects[slot]++; // a correction: same ID, different payload
+                        }
+                        append(body, "LH-" + id, historyMachines[slot], historyTimes[slot],
+                                historyDurations[slot], historyDefects[slot]);
+                        continue;
+                    }
+                }
+
+                long id = sequence++;
+                int slot = (int) (id & (HISTORY - 1));
+                historyTimes[slot] = now - (skewMillis > 0 ? random.nextLong(skewMillis) : 0);
+                historyMachines[slot] = random.nextInt(machines);
+                historyDurations[slot] = 500 + random.nextInt(5000);
+                historyDefects[slot] = (random.nextInt(10) == 0) ? random.nextInt(1, 5) : 0;
+                append(body, "LH-" + id, historyMachines[slot], historyTimes[slot],
+                        historyDurations[slot], historyDefects[slot]);
+            }
+            return new Batch(body.append(']').toString(), size);
+        }
+
+        private static void append(StringBuilder body, String eventId, int machine, long timeMillis,
+                                   int durationMs, int defects) {
+            body.append("{\"eventId\":\"").append(eventId)
+                    .append("\",\"machineId\":\"M-").append(String.format("%03d", machine + 1))
+                    .append("\",\"eventTime\":\"").append(Instant.ofEpochMilli(timeMillis))
+                    .append("\",\"durationMs\":").append(durationMs)
+                    .append(",\"defectCount\":").append(defects).append('}');
+        }
+
+        @Override
+        public String describe() {
+            return String.format("synthetic machines=%d duplicate=%.2f update=%.2f reject=%.2f skew=%ds",
+                    machines, duplicateRatio, updateRatio, rejectRatio, skewMillis / 1000);
+        }
+    }
+
+    private static final class Replay extends EventDataset {
+        private final Path file;
+        private final boolean loop;
+        private BufferedReader reader;
+
+        Replay(Path file, boolean loop) throws IOException {
+            this.file = file;
+            this.loop = loop;
+            this.reader = Files.newBufferedReader(file);
+        }
+
+        @Override
+        public synchronized Batch nextBatch(int size) {
+            try {
+                StringBuilder body = new StringBuilder(size * 128).append('[');
+                int n = 0;
+                while (n < size) {
+                    String line = reader.readLine();
+                    if (line == null) {
+                        if (!loop) {
+                            break;
+                        }
+                        reader.close();
+                        reader = Files.newBufferedReader(file);
+                        line = reader.readLine();
+                        if (line == null) {
+                            break; // empty file
+                        }
+                    }
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    if (n++ > 0) {
+                        body.append(',');
+                    }
+                    body.append(line);
+                }
+                return (n == 0) ? null : new Batch(body.append(']').toString(), n);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public String describe() {
+            return "replay " + file + (loop ? " (looped)" : "");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.AyushToCode.Buyogo.benchmark;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.service.EventService;
+import com.AyushToCode.Buyogo.utility.BatchResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EventService.processBatch across batch sizes and duplicate / update mixes.
+ * Every invocation gets a fresh batch: `duplicateRatio` of it replays stored
+ * events unchanged, `updateRatio` changes the defect count of stored events,
+ * and the rest are new IDs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class IngestBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int batchSize;
+
+    @Param({"0.0", "0.5", "0.8"})
+    public double duplicateRatio;
+
+    @Param({"0.0", "0.1"})
+    public double updateRatio;
+
+    private ConfigurableApplicationContext context;
+    private EventService eventService;
+    private final Instant baseTime = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS);
+
+    private List<MachineEvent> batch;
+    private int invocation;
+
+    @Setup(Level.Trial)
+    public void startContext() {
+        context = BenchmarkContext.start("ingest_bench");
+        eventService = context.getBean(EventService.class);
+
+        // Seed the events that duplicates and updates refer back to
+        List<MachineEvent> seed = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            seed.add(BenchmarkContext.event("SEED-" + i, machine(i), 1000, 0, baseTime));
+        }
+        eventService.processBatch(seed);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() {
+        context.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareBatch() {
+        invocation++;
+        int duplicates = (int) (batchSize * duplicateRatio);
+        int updates = Math.min((int) (batchSize * updateRatio), batchSize - duplicates);
+
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            if (i < duplicates) {
+                batch.add(BenchmarkContext.event("SEED-" + i, machine(i), 1000, 0, baseTime));
+            } else if (i < duplicates + updates) {
+                // Defect count is the invocation counter, so it differs from the stored row every time: a real update
+                batch.add(BenchmarkContext.event("SEED-" + i, machine(i), 1000, invocation, baseTime));
+            } else {
+                batch.add(BenchmarkContext.event("NEW-" + invocation + "-" + i, machine(i), 1000, i % 3, baseTime));
+            }
+        }
+    }
+
+    @Benchmark
+    public BatchResponse processBatch() {
+        return eventService.processBatch(batch);
+    }
+
+    private static String machine(int i) {
+        return String.format("M-%03d", i % 300);
+    }
+}
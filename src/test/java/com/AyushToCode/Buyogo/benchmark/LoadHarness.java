@@ -0,0 +1,514 @@
+package com.AyushToCode.Buyogo.benchmark;
+
+import com.AyushToCode.Buyogo.BuyogoApplication;
+import com.sun.tools.attach.VirtualMachine;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load and soak harness. Starts the application in its own JVM
+ * on a free port, then for `duration` seconds has `writers` clients post
+ * batches from an EventDataset to /events/batch while reads alternate between
+ * /events/stats and /events/stats/top-defect-lines at a fixed `read-rate`.
+ * Every `report` seconds, and once at the end, it prints throughput,
+ * accepted events (from the response bodies), p50/p99/p999 per operation,
+ * status codes, and the application JVM's heap and GC time, read from its
+ * MXBeans through the attach API so the harness's own allocation is left out.
+ *
+ * Paced traffic (write-rate > 0, and all reads) is open-loop: latency is
+ * measured from when a request was due, not from when it was sent, so a
+ * stalled server is not hidden by clients that stopped sending. Closed-loop
+ * writers time from the send. Either way the next batch is generated before
+ * its clock starts.
+ *
+ * Options are key=value; anything starting with -- is passed to the
+ * application (e.g. --buyogo.sharding.shards=4), and jvm="-Xmx2g ..." to its JVM.
+ *
+ * Run: mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=com.AyushToCode.Buyogo.benchmark.LoadHarness
+ *      [-Dexec.args="duration=600 writers=16 batch=500 read-rate=200 duplicate=0.1 skew=600"]
+ * Replay: -Dexec.args="replay=events.ndjson loop=true" (e.g. a saved GET /events/export)
+ */
+public class LoadHarness {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("duration", "60");     // measured seconds
+        DEFAULTS.put("warmup", "10");       // seconds of load before measuring
+        DEFAULTS.put("report", "10");       // interval report period, seconds
+        DEFAULTS.put("writers", "8");
+        DEFAULTS.put("batch", "500");       // events per POST
+        DEFAULTS.put("write-rate", "0");    // batches/s over all writers, 0 = as fast as each writer can
+        DEFAULTS.put("read-rate", "100");   // reads/s, 0 = no reads
+        DEFAULTS.put("machines", "300");
+        DEFAULTS.put("duplicate", "0.05");  // exact resends of earlier events
+        DEFAULTS.put("update", "0.02");     // resends with a changed defect count
+        DEFAULTS.put("reject", "0.01");     // invalid duration or future time
+        DEFAULTS.put("skew", "300");        // event times spread up to this many seconds into the past
+        DEFAULTS.put("seed", "42");
+        DEFAULTS.put("factory", "F01");     // factoryId for top-defect-lines
+        DEFAULTS.put("replay", "");         // NDJSON file instead of the synthetic dataset
+        DEFAULTS.put("loop", "false");      // restart the replay file when it runs out
+        DEFAULTS.put("jvm", "");            // space-separated options for the application JVM
+    }
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        Map<String, String> appArgs = new LinkedHashMap<>();
+        appArgs.put("server.port", Integer.toString(freePort()));
+        appArgs.put("spring.datasource.url", "jdbc:h2:mem:load_harness;DB_CLOSE_DELAY=-1");
+        appArgs.put("logging.level.root", "WARN");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected key=value: " + arg);
+            }
+            if (arg.startsWith("--")) {
+                appArgs.put(arg.substring(2, eq), arg.substring(eq + 1));
+            } else if (DEFAULTS.containsKey(arg.substring(0, eq))) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg + ", known: " + DEFAULTS.keySet());
+            }
+        }
+
+        EventDataset dataset = options.get("replay").isEmpty()
+                ? EventDataset.synthetic(intOption(options, "machines"), doubleOption(options, "duplicate"),
+                        doubleOption(options, "update"), doubleOption(options, "reject"),
+                        intOption(options, "skew"), Long.parseLong(options.get("seed")))
+                : EventDataset.replay(Path.of(options.get("replay")), Boolean.parseBoolean(options.get("loop")));
+
+        List<String> springArgs = appArgs.entrySet().stream()
+                .map(e -> "--" + e.getKey() + "=" + e.getValue())
+                .toList();
+        String jvm = options.get("jvm").trim();
+        List<String> jvmArgs = jvm.isEmpty() ? List.of() : List.of(jvm.split("\\s+"));
+        try (AppJvm app = AppJvm.start(jvmArgs, springArgs)) {
+            String base = "http://localhost:" + appArgs.get("server.port");
+            app.awaitReady(base);
+            System.out.println("options " + options);
+            System.out.println("app     " + appArgs + " pid=" + app.pid());
+            System.out.println("dataset " + dataset.describe());
+            new LoadHarness(base, dataset, options, app).run();
+        }
+    }
+
+    private final String base;
+    private final EventDataset dataset;
+    private final Map<String, String> options;
+    private final AppJvm app;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+
+    private final Recorder writes = new Recorder("write");
+    private final Recorder stats = new Recorder("stats");
+    private final Recorder topLines = new Recorder("top-lines");
+    private final List<Recorder> recorders = List.of(writes, stats, topLines);
+
+    private volatile boolean stopped;
+
+    private LoadHarness(String base, EventDataset dataset, Map<String, String> options, AppJvm app) {
+        this.base = base;
+        this.dataset = dataset;
+        this.options = options;
+        this.app = app;
+    }
+
+    private void run() throws Exception {
+        int writers = intOption(options, "writers");
+        int batchSize = intOption(options, "batch");
+        double writeRate = doubleOption(options, "write-rate");
+        double readRate = doubleOption(options, "read-rate");
+        long warmupMs = intOption(options, "warmup") * 1000L;
+        long durationMs = intOption(options, "duration") * 1000L;
+        long reportMs = intOption(options, "report") * 1000L;
+
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            long start = System.nanoTime();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                // Each paced writer owns every writers-th slot of the global schedule
+                long intervalNanos = (writeRate > 0) ? (long) (writers * 1e9 / writeRate) : 0;
+                long offsetNanos = (writeRate > 0) ? (long) (writer * 1e9 / writeRate) : 0;
+                pool.submit(() -> writeLoop(writer, batchSize, start + offsetNanos, intervalNanos));
+            }
+            if (readRate > 0) {
+                pool.submit(() -> readLoop(pool, start, (long) (1e9 / readRate)));
+            }
+
+            Thread.sleep(warmupMs);
+            recorders.forEach(Recorder::reset);
+            Snapshot total = app.snapshot();
+            app.resetPeakHeap();
+            long measureStart = System.nanoTime();
+
+            Snapshot interval = total;
+            for (long elapsed = 0; elapsed < durationMs && !stopped; elapsed += reportMs) {
+                Thread.sleep(Math.min(reportMs, durationMs - elapsed));
+                Snapshot now = app.snapshot();
+                report(String.format("[%4ds]", (System.nanoTime() - measureStart) / 1_000_000_000L),
+                        interval, now, true);
+                interval = now;
+            }
+
+            stopped = true;
+            System.out.println("==== total over " + (System.nanoTime() - measureStart) / 1_000_000_000L + "s");
+            report("[total]", total, app.snapshot(), false);
+            System.out.printf("heap peak=%dMB%n", app.peakHeapBytes() >> 20);
+            pool.shutdownNow(); // in-flight reads are abandoned, their samples are not needed any more
+        }
+    }
+
+    private Void writeLoop(int writer, int batchSize, long firstDue, long intervalNanos) throws Exception {
+        String client = "harness-" + writer;
+        long due = firstDue;
+        while (!stopped) {
+            // Generated off the clock: nextBatch is shared by all writers and may wait on the others
+            EventDataset.Batch batch = dataset.nextBatch(batchSize);
+            if (batch == null) {
+                stopped = true; // replay file used up
+                break;
+            }
+            HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/events/batch"))
+                    .header("Content-Type", "application/json")
+                    .header("X-Client-Id", client)
+                    .timeout(Duration.ofSeconds(60))
+                    .POST(HttpRequest.BodyPublishers.ofString(batch.json()))
+                    .build();
+            if (intervalNanos > 0) {
+                sleepUntil(due);
+            } else {
+                due = System.nanoTime();
+            }
+            HttpResponse<String> response = send(request, writes, due);
+            due += intervalNanos;
+
+            // Closed-loop writers back off as told; paced ones keep to their schedule
+            if (intervalNanos == 0 && response != null) {
+                long retryAfter = response.headers().firstValueAsLong("Retry-After").orElse(0);
+                if (retryAfter > 0) {
+                    Thread.sleep(retryAfter * 1000);
+                }
+            }
+        }
+        return null;
+    }
+
+    private Void readLoop(ExecutorService pool, long start, long intervalNanos) throws InterruptedException {
+        int machines = intOption(options, "machines");
+        String factory = options.get("factory");
+        for (long n = 0; !stopped; n++) {
+            long due = start + n * intervalNanos;
+            sleepUntil(due);
+            Instant end = Instant.now();
+            URI uri = (n % 2 == 0)
+                    ? URI.create(base + "/events/stats?machineId=M-"
+                            + String.format("%03d", ThreadLocalRandom.current().nextInt(machines) + 1)
+                            + "&start=" + end.minus(Duration.ofHours(1)) + "&end=" + end)
+                    : URI.create(base + "/events/stats/top-defect-lines?factoryId=" + factory
+                            + "&from=" + end.minus(Duration.ofHours(24)) + "&to=" + end + "&limit=10");
+            Recorder recorder = (n % 2 == 0) ? stats : topLines;
+            HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(60)).GET().build();
+            pool.submit(() -> send(request, recorder, due));
+        }
+        return null;
+    }
+
+    /**
+     * Latency counts from `due`; transport failures are recorded as status 0.
+     * Accepted events are the "accepted" count of a BatchResponse body, so
+     * deduped, updated and rejected events (and 202 tickets) add none.
+     */
+    private HttpResponse<String> send(HttpRequest request, Recorder recorder, long due) {
+        HttpResponse<String> response = null;
+        int status = 0;
+        try {
+            response = http.send(request, HttpResponse.BodyHandlers.ofString());
+            status = response.statusCode();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            // counted below
+        }
+        long nanos = System.nanoTime() - due;
+        recorder.record(nanos, status, (recorder == writes && status == 200) ? acceptedEvents(response.body()) : 0);
+        return response;
+    }
+
+    private static int acceptedEvents(String body) {
+        try {
+            return JSON.readTree(body).path("accepted").asInt(0);
+        } catch (JacksonException e) {
+            return 0;
+        }
+    }
+
+    private void report(String label, Snapshot from, Snapshot to, boolean interval) {
+        double seconds = (to.nanos - from.nanos) / 1e9;
+        for (Recorder recorder : recorders) {
+            Recorder.Summary s = recorder.summary(interval);
+            if (s.samples.length == 0) {
+                continue;
+            }
+            System.out.printf("%s %-9s %8.1f req/s %10.0f accepted/s "
+                            + "p50=%7.2fms p99=%7.2fms p999=%7.2fms max=%7.2fms %s%n",
+                    label, recorder.name, s.samples.length / seconds, s.acceptedEvents / seconds,
+                    percentile(s.samples, 0.50), percentile(s.samples, 0.99), percentile(s.samples, 0.999),
+                    s.samples[s.samples.length - 1] / 1e6, s.statuses);
+        }
+        System.out.printf("%s heap used=%dMB gc count=%d time=%dms (%.1f%% of wall)%n",
+                label, to.heapUsed >> 20, to.gcCount - from.gcCount, to.gcMillis - from.gcMillis,
+                (to.gcMillis - from.gcMillis) / (seconds * 10));
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void sleepUntil(long dueNanos) throws InterruptedException {
+        long wait = dueNanos - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private static int intOption(Map<String, String> options, String key) {
+        return Integer.parseInt(options.get(key));
+    }
+
+    private static double doubleOption(Map<String, String> options, String key) {
+        return Double.parseDouble(options.get(key));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    // Heap in use and cumulative GC counters of the application JVM at one instant
+    private record Snapshot(long nanos, long heapUsed, long gcCount, long gcMillis) {
+    }
+
+    /**
+     * The application in a child JVM on the harness's classpath, with its
+     * platform MXBeans reached over the local management agent the attach
+     * API starts in it.
+     */
+    private static final class AppJvm implements AutoCloseable {
+        private final Process process;
+        private JMXConnector connector;
+        private MemoryMXBean memory;
+        private List<GarbageCollectorMXBean> collectors;
+        private List<MemoryPoolMXBean> pools;
+
+        private AppJvm(Process process) {
+            this.process = process;
+        }
+
+        static AppJvm start(List<String> jvmArgs, List<String> springArgs) throws IOException {
+            List<String> command = new ArrayList<>();
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(jvmArgs);
+            command.add("-cp");
+            command.add(classpath());
+            command.add(BuyogoApplication.class.getName());
+            command.addAll(springArgs);
+            return new AppJvm(new ProcessBuilder(command).inheritIO().start());
+        }
+
+        long pid() {
+            return process.pid();
+        }
+
+        // Waits for the port to answer, then connects to the JVM's MXBeans
+        void awaitReady(String base) throws Exception {
+            HttpClient http = HttpClient.newHttpClient();
+            HttpRequest probe = HttpRequest.newBuilder(URI.create(base + "/events/batch/ready")).GET().build();
+            long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+            while (true) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Application exited with " + process.exitValue());
+                }
+                try {
+                    http.send(probe, HttpResponse.BodyHandlers.discarding()); // any status means it is up
+                    break;
+                } catch (IOException e) {
+                    if (System.nanoTime() > deadline) {
+                        throw new IllegalStateException("Application did not start listening", e);
+                    }
+                    Thread.sleep(200);
+                }
+            }
+
+            VirtualMachine vm = VirtualMachine.attach(Long.toString(process.pid()));
+            String address;
+            try {
+                address = vm.startLocalManagementAgent();
+            } finally {
+                vm.detach();
+            }
+            connector = JMXConnectorFactory.connect(new JMXServiceURL(address));
+            MBeanServerConnection mbeans = connector.getMBeanServerConnection();
+            memory = ManagementFactory.newPlatformMXBeanProxy(mbeans, ManagementFactory.MEMORY_MXBEAN_NAME,
+                    MemoryMXBean.class);
+            collectors = ManagementFactory.getPlatformMXBeans(mbeans, GarbageCollectorMXBean.class);
+            pools = ManagementFactory.getPlatformMXBeans(mbeans, MemoryPoolMXBean.class);
+        }
+
+        Snapshot snapshot() {
+            long count = 0;
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : collectors) {
+                count += Math.max(0, gc.getCollectionCount());
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            return new Snapshot(System.nanoTime(), memory.getHeapMemoryUsage().getUsed(), count, millis);
+        }
+
+        void resetPeakHeap() {
+            pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        }
+
+        long peakHeapBytes() {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : pools) {
+                if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            return peak;
+        }
+
+        // exec:java runs the harness in a URLClassLoader, not on java.class.path
+        private static String classpath() {
+            if (LoadHarness.class.getClassLoader() instanceof URLClassLoader loader) {
+                StringJoiner joined = new StringJoiner(File.pathSeparator);
+                for (URL url : loader.getURLs()) {
+                    try {
+                        joined.add(Path.of(url.toURI()).toString());
+                    } catch (URISyntaxException e) {
+                        throw new IllegalStateException("Unexpected classpath entry " + url, e);
+                    }
+                }
+                return joined.toString();
+            }
+            return System.getProperty("java.class.path");
+        }
+
+        @Override
+        public void close() throws Exception {
+            try {
+                if (connector != null) {
+                    connector.close();
+                }
+            } finally {
+                process.destroy();
+                if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+    }
+
+    // Latency samples of one operation since reset(); an interval summary covers those since the previous one
+    private static final class Recorder {
+        private final String name;
+        private long[] samples = new long[4096];
+        private int size;
+        private int reportedUpTo;
+        private long acceptedEvents;
+        private long reportedAcceptedEvents;
+        private final Map<Integer, Long> statuses = new TreeMap<>();
+        private final Map<Integer, Long> reportedStatuses = new TreeMap<>();
+
+        private record Summary(long[] samples, long acceptedEvents, Map<Integer, Long> statuses) {
+        }
+
+        Recorder(String name) {
+            this.name = name;
+        }
+
+        synchronized void record(long nanos, int status, int events) {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            samples[size++] = nanos;
+            statuses.merge(status, 1L, Long::sum);
+            if (status >= 200 && status < 300) {
+                acceptedEvents += events;
+            }
+        }
+
+        synchronized void reset() {
+            size = 0;
+            reportedUpTo = 0;
+            acceptedEvents = 0;
+            reportedAcceptedEvents = 0;
+            statuses.clear();
+            reportedStatuses.clear();
+        }
+
+        synchronized Summary summary(boolean interval) {
+            int from = interval ? reportedUpTo : 0;
+            long[] sorted = Arrays.copyOfRange(samples, from, size);
+            Arrays.sort(sorted);
+            Summary summary;
+            if (interval) {
+                Map<Integer, Long> delta = new TreeMap<>();
+                statuses.forEach((status, count) -> {
+                    long d = count - reportedStatuses.getOrDefault(status, 0L);
+                    if (d > 0) {
+                        delta.put(status, d);
+                    }
+                });
+                summary = new Summary(sorted, acceptedEvents - reportedAcceptedEvents, delta);
+                reportedUpTo = size;
+                reportedAcceptedEvents = acceptedEvents;
+                reportedStatuses.clear();
+                reportedStatuses.putAll(statuses);
+            } else {
+                summary = new Summary(sorted, acceptedEvents, new TreeMap<>(statuses));
+            }
+            return summary;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.AyushToCode.Buyogo.benchmark;
+
+import com.AyushToCode.Buyogo.entity.MachineEvent;
+import com.AyushToCode.Buyogo.service.EventService;
+import com.AyushToCode.Buyogo.utility.BatchResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * processBatch ingest throughput against the number of shards. shards=0 is
+ * the single primary store; otherwise each batch is split by eventId hash
+ * and the shards are written in parallel. Every invocation writes new IDs.
+ * Minute rollups are only maintained on the primary store, so they are off
+ * in every run to compare the same work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ShardedIngestBenchmark {
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int shards;
+
+    @Param({"10000"})
+    public int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private EventService eventService;
+    private final Instant baseTime = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS);
+
+    private List<MachineEvent> batch;
+    private int invocation;
+
+    @Setup(Level.Trial)
+    public void startContext() {
+        context = BenchmarkContext.start("shard_bench",
+                "--buyogo.sharding.shards=" + shards,
+                "--buyogo.sharding.url-template=jdbc:h2:mem:shard_bench_%d;DB_CLOSE_DELAY=-1",
+                "--buyogo.hot-store.enabled=false",
+                "--buyogo.rollups.enabled=false");
+        eventService = context.getBean(EventService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() {
+        context.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareBatch() {
+        invocation++;
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(BenchmarkContext.event("SHARD-" + invocation + "-" + i,
+                    String.format("M-%03d", i % 300), 1000, i % 3, baseTime));
+        }
+    }
+
+    // Reported as batches/s; multiply by batchSize for events/s
+    @Benchmark
+    public BatchResponse processBatch() {
+        return eventService.processBatch(batch);
+    }
+}
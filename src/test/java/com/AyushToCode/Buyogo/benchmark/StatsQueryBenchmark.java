@@ -0,0 +1,100 @@
+package com.AyushToCode.Buyogo.benchmark;
+
+import com.AyushToCode.Buyogo.repo.DayPartitions;
+import com.AyushToCode.Buyogo.service.EventService;
+import com.AyushToCode.Buyogo.utility.StatsResponse;
+import com.AyushToCode.Buyogo.utility.TopDefectLineResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * getMachineStats / getTopDefectLines over a 24h window against day tables
+ * pre-seeded with `rows` events spread over 30 days and 300 machines.
+ * The window edges are offset by 30s so the partial-bucket path is exercised.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class StatsQueryBenchmark {
+
+    private static final Instant BASE = Instant.parse("2026-01-01T00:00:00Z");
+    private static final Duration SPAN = Duration.ofDays(30);
+
+    @Param({"1000000", "10000000", "50000000"})
+    public long rows;
+
+    @Param({"true", "false"})
+    public boolean rollups;
+
+    private ConfigurableApplicationContext context;
+    private EventService eventService;
+    private Instant from;
+    private Instant to;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        context = BenchmarkContext.start("stats_bench", "--buyogo.rollups.enabled=" + rollups);
+        eventService = context.getBean(EventService.class);
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+
+        DayPartitions partitions = context.getBean(DayPartitions.class);
+
+        // Seed day by day: row X lands at BASE + X * stepMillis, so each day is one contiguous X range
+        long stepMillis = Math.max(1, SPAN.toMillis() / rows);
+        long dayMillis = Duration.ofDays(1).toMillis();
+        for (long d = 0; ; d++) {
+            long first = Math.max(1, Math.ceilDiv(d * dayMillis, stepMillis));
+            long last = Math.min(rows, Math.ceilDiv((d + 1) * dayMillis, stepMillis) - 1);
+            if (first > rows) {
+                break;
+            }
+            LocalDate day = DayPartitions.dayOf(BASE).plusDays(d);
+            partitions.ensure(List.of(day));
+            jdbc.update("INSERT INTO " + DayPartitions.eventTable(day) + " " +
+                            "(event_id, machine_id, line_id, factory_id, event_time, received_time, " +
+                            "duration_ms, defect_count, payload_hash) " +
+                            "SELECT 'Q-' || X, 'M-' || LPAD(CAST(MOD(X, 300) AS VARCHAR), 3, '0'), " +
+                            "'LINE-' || MOD(MOD(X, 300), 40), 'F01', " +
+                            "DATEADD('MILLISECOND', X * ?, ?), ?, 1000, MOD(X, 7) - 1, X " +
+                            "FROM SYSTEM_RANGE(?, ?)",
+                    stepMillis, Timestamp.from(BASE), Timestamp.from(BASE), first, last);
+
+            // Rebuild the rollups in bulk instead of replaying rows through processBatch
+            jdbc.update("INSERT INTO " + DayPartitions.rollupTable(day) + " " +
+                    "(machine_id, bucket_start, line_id, factory_id, event_count, defect_sum) " +
+                    "SELECT machine_id, DATE_TRUNC('MINUTE', event_time), MAX(line_id), MAX(factory_id), COUNT(*), " +
+                    "SUM(CASE WHEN defect_count <> -1 THEN defect_count ELSE 0 END) " +
+                    "FROM " + DayPartitions.eventTable(day) + " GROUP BY machine_id, DATE_TRUNC('MINUTE', event_time)");
+        }
+
+        from = BASE.plus(Duration.ofDays(15)).plusSeconds(30);
+        to = from.plus(24, ChronoUnit.HOURS);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public StatsResponse machineStats() {
+        return eventService.getMachineStats("M-042", from, to);
+    }
+
+    @Benchmark
+    public List<TopDefectLineResponse> topDefectLines() {
+        return eventService.getTopDefectLines("F01", from, to, 10);
+    }
+}